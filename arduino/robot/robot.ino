@@ -5,6 +5,16 @@
 #define COMMAND_BACKWARDS 2
 #define COMMAND_TURN_LEFT 3
 #define COMMAND_TURN_RIGHT 4
+#define COMMAND_MELODY 5
+#define COMMAND_BLINK 6
+
+// PROTOCOL
+// A program frame is: FRAME_START, sequence number, length (2 bytes, big endian), one command number per command,
+// CRC-16/CCITT of sequence number, length and commands (2 bytes, big endian). It gets answered with
+// "ACK <sequence number>", or NAK if it was damaged or contains a command number other than COMMAND_FORWARD to
+// COMMAND_BLINK. A rejected frame leaves the stored program unchanged.
+#define FRAME_START 0xA5
+#define MAX_COMMANDS 256
 
 // PINS
 int start_button = 18;
@@ -39,7 +49,8 @@ int turning_millis = 0;
 // STATE
 bool running = false;
 
-int commands[256];
+uint8_t commands[MAX_COMMANDS];
+uint8_t received_commands[MAX_COMMANDS];
 int command_index = 0;
 int command_count = 0;
 
@@ -142,6 +153,85 @@ void run_melody() {
   delay(500);
 }
 
+void blink() {
+  for (int i = 0; i < 3; i++) {
+    digitalWrite(led_forward, HIGH);
+    digitalWrite(led_backwards, HIGH);
+    digitalWrite(led_left, HIGH);
+    digitalWrite(led_right, HIGH);
+    delay(500);
+    digitalWrite(led_forward, LOW);
+    digitalWrite(led_backwards, LOW);
+    digitalWrite(led_left, LOW);
+    digitalWrite(led_right, LOW);
+    delay(500);
+  }
+}
+
+uint16_t crc16_update(uint16_t crc, uint8_t data) {
+  crc ^= (uint16_t) data << 8;
+  for (int i = 0; i < 8; i++) {
+    crc = (crc & 0x8000) ? (crc << 1) ^ 0x1021 : crc << 1;
+  }
+
+  return crc;
+}
+
+bool read_byte(uint8_t *data) {
+  return Serial.readBytes(data, 1) == 1;
+}
+
+void receive_program() {
+  uint8_t start;
+  uint8_t sequence;
+  uint8_t length_high;
+  uint8_t length_low;
+  if (!read_byte(&start) || !read_byte(&sequence) || !read_byte(&length_high) || !read_byte(&length_low)) {
+    Serial.println("NAK");
+    return;
+  }
+
+  uint16_t crc = crc16_update(crc16_update(crc16_update(0xFFFF, sequence), length_high), length_low);
+  uint16_t length = ((uint16_t) length_high << 8) | length_low;
+  if (length > MAX_COMMANDS) {
+    while (Serial.available() > 0) {
+      Serial.read();
+    }
+    Serial.println("NAK");
+    return;
+  }
+
+  if (Serial.readBytes(received_commands, length) != length) {
+    Serial.println("NAK");
+    return;
+  }
+
+  for (uint16_t i = 0; i < length; i++) {
+    crc = crc16_update(crc, received_commands[i]);
+  }
+
+  uint8_t crc_high;
+  uint8_t crc_low;
+  if (!read_byte(&crc_high) || !read_byte(&crc_low) || crc != (((uint16_t) crc_high << 8) | crc_low)) {
+    Serial.println("NAK");
+    return;
+  }
+
+  for (uint16_t i = 0; i < length; i++) {
+    if (received_commands[i] < COMMAND_FORWARD || received_commands[i] > COMMAND_BLINK) {
+      Serial.println("NAK");
+      return;
+    }
+  }
+
+  memcpy(commands, received_commands, length);
+  command_count = length;
+  command_index = 0;
+
+  Serial.print("ACK ");
+  Serial.println(sequence);
+}
+
 // SETTING UP
 void setup() {
   pinMode(start_button, INPUT);
@@ -188,7 +278,9 @@ void loop() {
   straight_millis = (int) (straight_percent * 10000);
   turning_millis = (int) (turning_percent * 6000);
 
-  if (Serial.available() > 0) {
+  if (Serial.available() > 0 && Serial.peek() == FRAME_START) {
+    receive_program();
+  } else if (Serial.available() > 0) {
     String command = Serial.readString();
     command.trim();
 
@@ -267,6 +359,10 @@ void loop() {
         turn_left(turning_millis);
       } else if (commands[command_index] == COMMAND_TURN_RIGHT) {
         turn_right(turning_millis);
+      } else if (commands[command_index] == COMMAND_MELODY) {
+        run_melody();
+      } else if (commands[command_index] == COMMAND_BLINK) {
+        blink();
       }
 
       command_index++;
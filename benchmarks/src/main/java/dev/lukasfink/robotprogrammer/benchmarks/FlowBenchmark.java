@@ -0,0 +1,66 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FlowBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int chainLength;
+
+    private Flow flow;
+    private FlowCommand middle;
+
+    @Setup
+    public void setUp() {
+        flow = Programs.chain(chainLength);
+        middle = flow.getStartCommand();
+        for (int i = 0; i < chainLength / 2; i++) {
+            middle = middle.getNext();
+        }
+    }
+
+    @Benchmark
+    public Flow updateStates() {
+        flow.updateStates();
+
+        return flow;
+    }
+
+    /**
+     * Splitting a chain in the middle and joining it again, like dragging a block away and back.
+     */
+    @Benchmark
+    public Flow unlinkAndLink() {
+        FlowCommand next = middle.getNext();
+        flow.unlink(middle, next);
+        flow.link(middle, next);
+
+        return flow;
+    }
+
+    @Benchmark
+    public boolean isComplete() {
+        return flow.isComplete();
+    }
+
+    @Benchmark
+    public int count() {
+        return flow.count();
+    }
+
+    @Benchmark
+    public String generateSourceCode() {
+        return flow.generateSourceCode();
+    }
+
+}
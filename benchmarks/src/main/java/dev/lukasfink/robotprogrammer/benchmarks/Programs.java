@@ -0,0 +1,77 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.components.CodeBlock;
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+import dev.lukasfink.robotprogrammer.io.ExportedCodeBlock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds the programs the benchmarks run on.
+ */
+public class Programs {
+
+    private static final RobotInstruction[] STATEMENTS = new RobotInstruction[]{
+            RobotInstruction.FORWARD,
+            RobotInstruction.TURN_RIGHT,
+            RobotInstruction.FORWARD,
+            RobotInstruction.TURN_LEFT,
+            RobotInstruction.BACKWARDS,
+            RobotInstruction.BLINK,
+    };
+
+    /**
+     * A complete flow of the given length: start, statements and end.
+     */
+    public static Flow chain(int length) {
+        Flow flow = new Flow();
+        FlowCommand previous = flow.getStartCommand();
+        for (int i = 0; i < length - 2; i++) {
+            previous = append(flow, previous, STATEMENTS[i % STATEMENTS.length]);
+        }
+        append(flow, previous, RobotInstruction.TERMINATE);
+        flow.updateStates();
+
+        return flow;
+    }
+
+    private static FlowCommand append(Flow flow, FlowCommand previous, RobotInstruction instruction) {
+        FlowCommand command = new FlowCommand(instruction);
+        flow.addCommand(command);
+        previous.setNext(command);
+        command.setPrevious(previous);
+
+        return command;
+    }
+
+    /**
+     * The blocks of a flow with their links, placed below each other like the editor snaps them.
+     */
+    public static List<ExportedCodeBlock> exportedBlocks(Flow flow) {
+        List<ExportedCodeBlock> exportedCodeBlocks = new ArrayList<>();
+        FlowCommand currentCommand = flow.getStartCommand();
+        double y = 50;
+        while (true) {
+            int id = exportedCodeBlocks.size();
+            exportedCodeBlocks.add(new ExportedCodeBlock(
+                    id,
+                    400,
+                    y,
+                    currentCommand.getInstruction().getValue(),
+                    currentCommand.hasNext() ? id + 1 : null
+            ));
+            if (!currentCommand.hasNext()) {
+                break;
+            }
+
+            currentCommand = currentCommand.getNext();
+            y += CodeBlock.SIZE_HEIGHT + CodeBlock.SPACING;
+        }
+
+        return exportedCodeBlocks;
+    }
+
+}
@@ -0,0 +1,76 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.io.BinaryProjectFormat;
+import dev.lukasfink.robotprogrammer.io.ExportedCodeBlock;
+import dev.lukasfink.robotprogrammer.io.IOHelper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int chainLength;
+
+    private List<ExportedCodeBlock> exportedCodeBlocks;
+    private String json;
+    private Path binaryFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        exportedCodeBlocks = Programs.exportedBlocks(Programs.chain(chainLength));
+        json = IOHelper.translateToJson(exportedCodeBlocks);
+
+        binaryFile = Files.createTempFile("benchmark", "." + BinaryProjectFormat.FILE_EXTENSION);
+        BinaryProjectFormat.write(binaryFile, exportedCodeBlocks);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(binaryFile);
+    }
+
+    @Benchmark
+    public String translateToJson() {
+        return IOHelper.translateToJson(exportedCodeBlocks);
+    }
+
+    @Benchmark
+    public List<ExportedCodeBlock> translateToStatements() {
+        return IOHelper.translateToStatements(json);
+    }
+
+    /**
+     * Streams the blocks without collecting them, the memory needed does not grow with the file.
+     */
+    @Benchmark
+    public int readJson() throws IOException {
+        int[] count = new int[1];
+        IOHelper.readJson(new StringReader(json), exportedCodeBlock -> count[0]++);
+
+        return count[0];
+    }
+
+    @Benchmark
+    public Flow translateToFlow() {
+        return IOHelper.translateToFlow(IOHelper.translateToStatements(json));
+    }
+
+    @Benchmark
+    public Flow readBinaryFlow() throws IOException {
+        return BinaryProjectFormat.readFlow(binaryFile);
+    }
+
+}
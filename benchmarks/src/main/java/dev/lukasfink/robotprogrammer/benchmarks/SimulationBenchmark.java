@@ -0,0 +1,42 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.Maze;
+import dev.lukasfink.robotprogrammer.flow.SimulationEngine;
+import dev.lukasfink.robotprogrammer.flow.SimulationState;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int chainLength;
+
+    private Flow flow;
+    private Maze maze;
+
+    @Setup
+    public void setUp() {
+        flow = Programs.chain(chainLength);
+        maze = Maze.byNumber(Maze.MAZE_COUNT);
+    }
+
+    @Benchmark
+    public List<SimulationState> simulate() {
+        return new SimulationEngine(flow).run();
+    }
+
+    @Benchmark
+    public List<SimulationState> simulateInMaze() {
+        return new SimulationEngine(flow, maze).run();
+    }
+
+}
@@ -0,0 +1,79 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.components.CodeBlock;
+import dev.lukasfink.robotprogrammer.util.SpatialGrid;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The search for blocks a dropped block overlaps, as done by MainController.checkIntersection. Blocks are spread over
+ * the canvas in columns of chains. The linear scan is the former approach, the grid query the current one.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SnapBenchmark {
+
+    private static final int BLOCKS_PER_COLUMN = 100;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int blockCount;
+
+    private Bounds[] blockBounds;
+    private Bounds droppedBounds;
+    private SpatialGrid<Bounds> blockIndex;
+
+    @Setup
+    public void setUp() {
+        blockBounds = new Bounds[blockCount];
+        for (int i = 0; i < blockCount; i++) {
+            blockBounds[i] = new BoundingBox(
+                    (i / BLOCKS_PER_COLUMN) * (CodeBlock.SIZE_WIDTH + 40),
+                    (i % BLOCKS_PER_COLUMN) * (CodeBlock.SIZE_HEIGHT + CodeBlock.SPACING),
+                    CodeBlock.SIZE_WIDTH,
+                    CodeBlock.SIZE_HEIGHT
+            );
+        }
+
+        blockIndex = new SpatialGrid<>(CodeBlock.SIZE_WIDTH);
+        for (Bounds bounds: blockBounds) {
+            blockIndex.put(bounds, bounds.getMinX(), bounds.getMinY(), bounds.getWidth(), bounds.getHeight());
+        }
+
+        Bounds target = blockBounds[blockCount / 2];
+        droppedBounds = new BoundingBox(target.getMinX() + 10, target.getMaxY() - 5, CodeBlock.SIZE_WIDTH, CodeBlock.SIZE_HEIGHT);
+    }
+
+    @Benchmark
+    public int linearScan() {
+        int intersections = 0;
+        for (Bounds bounds: blockBounds) {
+            if (droppedBounds.intersects(bounds)) {
+                intersections++;
+            }
+        }
+
+        return intersections;
+    }
+
+    @Benchmark
+    public int gridQuery() {
+        int intersections = 0;
+        List<Bounds> candidates = blockIndex.query(droppedBounds.getMinX(), droppedBounds.getMinY(), droppedBounds.getWidth(), droppedBounds.getHeight());
+        for (Bounds bounds: candidates) {
+            if (droppedBounds.intersects(bounds)) {
+                intersections++;
+            }
+        }
+
+        return intersections;
+    }
+
+}
@@ -0,0 +1,48 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.io.ProgramUploader;
+import dev.lukasfink.robotprogrammer.io.RobotProtocol;
+import dev.lukasfink.robotprogrammer.io.VirtualRobotLink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads programs to a virtual robot, which emulates a 9600 baud line. The frame of a program has its length plus
+ * RobotProtocol.HEADER_LENGTH and RobotProtocol.CRC_LENGTH bytes, divided by the time of an upload that gives the
+ * throughput. Lost frames are only retransmitted after the acknowledgement timeout.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class TransferBenchmark {
+
+    /**
+     * Start and end aren't uploaded, so the longest chain fills the program memory of the robot
+     */
+    @Param({"10", "100", "" + (RobotProtocol.MAX_PROGRAM_LENGTH + 2)})
+    public int chainLength;
+
+    @Param({"0", "0.1"})
+    public double lossRate;
+
+    private Flow flow;
+
+    @Setup
+    public void setUp() {
+        flow = Programs.chain(chainLength);
+    }
+
+    @Benchmark
+    public Duration upload() throws IOException, InterruptedException, ExecutionException {
+        return new ProgramUploader(new VirtualRobotLink(0, lossRate)).upload(flow);
+    }
+
+}
@@ -0,0 +1,49 @@
+package dev.lukasfink.robotprogrammer.benchmarks;
+
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.util.Translator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TranslatorBenchmark {
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int chainLength;
+
+    private String untranslatedSource;
+    private String singleInstruction;
+
+    @Setup
+    public void setUp() {
+        StringBuilder source = new StringBuilder();
+        FlowCommand currentCommand = Programs.chain(chainLength).getStartCommand();
+        while (currentCommand != null) {
+            source.append(currentCommand.getInstructionText()).append("\n");
+            currentCommand = currentCommand.getNext();
+        }
+
+        untranslatedSource = source.toString();
+        singleInstruction = Programs.chain(3).getStartCommand().getNext().getInstructionText();
+    }
+
+    @Benchmark
+    public String translateSource() {
+        return Translator.translate(untranslatedSource);
+    }
+
+    /**
+     * What every code block does for its label.
+     */
+    @Benchmark
+    public String translateInstruction() {
+        return Translator.translate(singleInstruction);
+    }
+
+}
@@ -11,17 +11,30 @@ public class App extends Application {
 
     public static final String VERSION = "1.0.0 Beta";
 
+    private MainController mainController;
+
     @Override
     public void start(Stage stage) throws IOException {
         FXMLLoader fxmlLoader = new FXMLLoader(App.class.getResource("main-view.fxml"));
         Scene scene = new Scene(fxmlLoader.load(), 1920, 1080);
+        mainController = fxmlLoader.getController();
         stage.setTitle("Robotersteuerung V" + App.VERSION);
         stage.setScene(scene);
         stage.setMaximized(true);
         stage.show();
     }
 
+    @Override
+    public void stop() {
+        if (mainController != null) {
+            mainController.shutdown();
+        }
+    }
+
+    /**
+     * Starts the user interface only, see {@link Launcher} for the command line tools.
+     */
     public static void main(String[] args) {
-        launch();
+        launch(args);
     }
 }
\ No newline at end of file
@@ -0,0 +1,24 @@
+package dev.lukasfink.robotprogrammer;
+
+import dev.lukasfink.robotprogrammer.grading.BatchGrader;
+import javafx.application.Application;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Entry point of the application. Unlike {@link App} it doesn't extend Application, so the JavaFX launcher doesn't start
+ * the toolkit before the arguments are looked at and the batch grader runs without a display.
+ */
+public class Launcher {
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length > 0 && "--grade".equals(args[0])) {
+            BatchGrader.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+
+        Application.launch(App.class, args);
+    }
+
+}
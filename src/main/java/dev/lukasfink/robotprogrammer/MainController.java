@@ -1,47 +1,88 @@
 package dev.lukasfink.robotprogrammer;
 
+import dev.lukasfink.robotprogrammer.components.Arena;
+import dev.lukasfink.robotprogrammer.components.BlockCanvas;
 import dev.lukasfink.robotprogrammer.components.CodeBlock;
 import dev.lukasfink.robotprogrammer.components.Robot;
+import dev.lukasfink.robotprogrammer.components.SourceCodeView;
 import dev.lukasfink.robotprogrammer.components.TransferDialogController;
 import dev.lukasfink.robotprogrammer.flow.Flow;
 import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.Maze;
 import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+import dev.lukasfink.robotprogrammer.flow.SimulationEngine;
+import dev.lukasfink.robotprogrammer.flow.SimulationState;
+import dev.lukasfink.robotprogrammer.io.BinaryProjectFormat;
 import dev.lukasfink.robotprogrammer.io.ExportedCodeBlock;
 import dev.lukasfink.robotprogrammer.io.IOHelper;
+import dev.lukasfink.robotprogrammer.io.ProjectJournal;
+import dev.lukasfink.robotprogrammer.util.SpatialGrid;
+import dev.lukasfink.robotprogrammer.util.Translator;
+import dev.lukasfink.robotprogrammer.util.UndoHistory;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
+import javafx.geometry.BoundingBox;
+import javafx.geometry.Bounds;
 import javafx.geometry.Point2D;
 import javafx.scene.Cursor;
+import javafx.scene.Group;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.canvas.Canvas;
 import javafx.scene.canvas.GraphicsContext;
 import javafx.scene.control.*;
 import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
 import javafx.scene.layout.AnchorPane;
 import javafx.scene.layout.Pane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.media.AudioClip;
 import javafx.scene.paint.Color;
+import javafx.scene.paint.ImagePattern;
 import javafx.stage.FileChooser;
 import javafx.stage.Modality;
 import javafx.stage.Stage;
 import org.kordamp.ikonli.javafx.FontIcon;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.StandardOpenOption;
 import java.util.*;
 
 public class MainController implements Initializable {
 
     private static final int GRID_GAP = 50;
 
+    private static final int HISTORY_SIZE = 100;
+
+    /**
+     * Horizontal distance between the start positions of several robots outside of a maze
+     */
+    private static final double ROBOT_SPACING = 2 * SimulationEngine.MOVE_DISTANCE;
+
+    /**
+     * Hue difference between the colours of loaded robots, the golden angle keeps neighbouring colours apart
+     */
+    private static final double ROBOT_HUE_STEP = 137.5;
+
+    /**
+     * Line width of the paths drawn after the programs have finished
+     */
+    private static final double PATH_WIDTH = 3;
+
+    /**
+     * Draws the program blocks on one canvas instead of one node per block if set to true, e.g. with
+     * -Drobotprogrammer.canvasEditor=true
+     */
+    private static final String CANVAS_EDITOR_PROPERTY = "robotprogrammer.canvasEditor";
+
     @FXML
     private TextArea codeEditor;
 
@@ -72,6 +113,9 @@ public class MainController implements Initializable {
     @FXML
     private Button stopButton;
 
+    @FXML
+    private ChoiceBox<SimulationSpeed> speedChoiceBox;
+
     @FXML
     private MenuItem newMenuItem;
 
@@ -84,6 +128,12 @@ public class MainController implements Initializable {
     @FXML
     private MenuItem exitMenuItem;
 
+    @FXML
+    private MenuItem undoMenuItem;
+
+    @FXML
+    private MenuItem redoMenuItem;
+
     @FXML
     private MenuItem noMazeMenuItem;
 
@@ -96,6 +146,12 @@ public class MainController implements Initializable {
     @FXML
     private MenuItem maze3MenuItem;
 
+    @FXML
+    private MenuItem addRobotsMenuItem;
+
+    @FXML
+    private MenuItem removeRobotsMenuItem;
+
     @FXML
     private MenuItem transferMenuItem;
 
@@ -115,12 +171,31 @@ public class MainController implements Initializable {
     }
 
     private final HashMap<FlowCommand, CodeBlock> codeBlockMap;
+    private final SpatialGrid<CodeBlock> blockIndex;
+    private final LinkedHashMap<CodeBlock, Point2D> moveOrigins;
+    private final UndoHistory history;
 
     private final Flow flow;
 
+    private final ProjectJournal journal;
+
     private final AudioClip selectClip;
     private final AudioClip dropClip;
 
+    private SourceCodeView sourceCodeView;
+
+    private BlockCanvas blockCanvas;
+
+    /**
+     * Holds the program blocks in program coordinates, panning only translates this layer
+     */
+    private Group programLayer;
+
+    /**
+     * Program blocks currently shown, all others are outside of the viewport and hidden
+     */
+    private final HashSet<CodeBlock> visibleBlocks;
+
     private CodeBlock newBlock;
 
     private FontIcon trashArea;
@@ -130,9 +205,23 @@ public class MainController implements Initializable {
     private FontIcon playIcon;
     private FontIcon pauseIcon;
 
+    private final Arena arena;
+
+    /**
+     * The robot running the program of the editor
+     */
     private final Robot robot;
+    private final Image robotImage;
+
+    /**
+     * Further robots running programs loaded from files
+     */
+    private final LinkedHashMap<Robot, Flow> loadedRobots;
 
-    private Point2D gridOffset;
+    /**
+     * Translation from program coordinates to the coordinates of the statements pane
+     */
+    private Point2D viewOffset;
     private Point2D gridDragStart;
 
     private int templateBlocksMaxX;
@@ -142,21 +231,52 @@ public class MainController implements Initializable {
 
     private double simulationScale;
 
+    /**
+     * Grid and maze of the simulation, rendered for the size, scale and maze they were rendered with
+     */
+    private WritableImage simulationBackground;
+    private double simulationBackgroundScale;
+    private int simulationBackgroundMaze;
+
+    private final WritableImage statementsGridTile;
+
+    private boolean redrawScheduled;
+
     public MainController() {
         flow = new Flow();
         codeBlockMap = new HashMap<>();
-        robot = new Robot(new Image(Objects.requireNonNull(getClass().getResourceAsStream("balloon_robot.png"))));
+        blockIndex = new SpatialGrid<>(CodeBlock.SIZE_WIDTH);
+        moveOrigins = new LinkedHashMap<>();
+        visibleBlocks = new HashSet<>();
+        history = new UndoHistory(HISTORY_SIZE);
+        journal = new ProjectJournal(ProjectJournal.defaultDirectory());
+        robotImage = new Image(Objects.requireNonNull(getClass().getResourceAsStream("balloon_robot.png")));
+        robot = new Robot(robotImage, null);
+        arena = new Arena();
+        arena.addRobot(robot);
+        loadedRobots = new LinkedHashMap<>();
 
         selectClip = new AudioClip(Objects.requireNonNull(getClass().getResource("select.wav")).toString());
         dropClip = new AudioClip(Objects.requireNonNull(getClass().getResource("drop.wav")).toString());
 
-        gridOffset = new Point2D(0, 0);
+        viewOffset = new Point2D(0, 0);
 
         simulationScale = 1.0;
+
+        statementsGridTile = createGridTile(Color.gray(0.9));
     }
 
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
+        programLayer = new Group();
+        programLayer.setManaged(false);
+        if (Boolean.getBoolean(CANVAS_EDITOR_PROPERTY)) {
+            blockCanvas = new BlockCanvas(blockIndex);
+            blockCanvas.widthProperty().bind(graphicalStatements.widthProperty());
+            blockCanvas.heightProperty().bind(graphicalStatements.heightProperty());
+            blockCanvas.routeEvents(graphicalStatements);
+        }
+
         CodeBlock[] templateBlocks = new CodeBlock[]{
                 new CodeBlock(instructionImageMap.get(RobotInstruction.FORWARD.getValue()), new FlowCommand(RobotInstruction.FORWARD)),
                 new CodeBlock(instructionImageMap.get(RobotInstruction.BACKWARDS.getValue()), new FlowCommand(RobotInstruction.BACKWARDS)),
@@ -179,11 +299,18 @@ public class MainController implements Initializable {
         CodeBlock startBlock = addCodeBlock(new CodeBlock(instructionImageMap.get(RobotInstruction.INIT.getValue()), flow.getStartCommand()));
         startBlock.setLayoutX(templateBlocksMaxX + 80);
         startBlock.setLayoutY(50);
+        commitMoves(false);
+        history.clear();
 
         graphicalStatements.getChildren().addAll(templateBlocks);
 
         trashArea = new FontIcon("mdral-delete:256:RED");
         graphicalStatements.getChildren().add(trashArea);
+        if (blockCanvas != null) {
+            graphicalStatements.getChildren().add(blockCanvas);
+        } else {
+            graphicalStatements.getChildren().add(programLayer);
+        }
         AnchorPane.setTopAnchor(trashArea, templateBlocksMaxY + 20.0);
         AnchorPane.setLeftAnchor(trashArea, 0.0);
 
@@ -193,40 +320,49 @@ public class MainController implements Initializable {
             }
         });
 
+        graphicalStatements.setOnMouseReleased(event -> commitMoves(false));
+
         graphicalStatements.setOnMouseDragged(event -> {
             if (event.isMiddleButtonDown()) {
                 Point2D diff = new Point2D(event.getX() - gridDragStart.getX(), event.getY() - gridDragStart.getY());
-                gridOffset = new Point2D(gridOffset.getX() + diff.getX(), gridOffset.getY() + diff.getY());
-                for (CodeBlock codeBlock: codeBlockMap.values()) {
-                    codeBlock.setLayoutX(codeBlock.getLayoutX() + diff.getX());
-                    codeBlock.setLayoutY(codeBlock.getLayoutY() + diff.getY());
-                }
-                redraw();
+                viewOffset = viewOffset.add(diff);
+                updateViewport();
                 gridDragStart = new Point2D(event.getX(), event.getY());
             }
         });
 
+        graphicalStatements.widthProperty().addListener(observable -> updateVisibleBlocks());
+        graphicalStatements.heightProperty().addListener(observable -> updateVisibleBlocks());
+
         simulationCanvas.heightProperty().bind(simulationParent.heightProperty());
         simulationCanvas.widthProperty().bind(simulationParent.widthProperty());
 
-        simulationParent.heightProperty().addListener(observable -> {
-            redraw();
-        });
-
-        simulationParent.widthProperty().addListener(observable -> {
-            redraw();
-        });
+        simulationParent.heightProperty().addListener(observable -> requestRedraw());
+        simulationParent.widthProperty().addListener(observable -> requestRedraw());
 
-        simulationParent.getChildren().add(robot);
+        simulationParent.getChildren().add(arena);
 
         gridCanvas.heightProperty().bind(statementsStack.heightProperty());
         gridCanvas.widthProperty().bind(statementsStack.widthProperty());
+        gridCanvas.heightProperty().addListener(observable -> requestRedraw());
+        gridCanvas.widthProperty().addListener(observable -> requestRedraw());
 
         redraw();
+        flow.addStateListener(command -> {
+            CodeBlock codeBlock = codeBlockMap.get(command);
+            if (codeBlock != null) {
+                codeBlock.updateLook();
+                if (blockCanvas != null) {
+                    blockCanvas.invalidate(codeBlock);
+                }
+            }
+        });
         flow.updateStates();
         updateLooks();
 
-        robot.setVisible(false);
+        sourceCodeView = new SourceCodeView(codeEditor, flow);
+
+        arena.setVisible(false);
 
         zoomOutIcon = new FontIcon("mdmz-zoom_out:56:BLACK");
         zoomInIcon = new FontIcon("mdmz-zoom_in:56:BLACK");
@@ -237,47 +373,64 @@ public class MainController implements Initializable {
         playButton.setDisable(true);
         playButton.setOnAction(event -> {
             if (playButton.isSelected()) {
-                if (robot.isIdle()) {
+                if (arena.isIdle()) {
                     simulateCommands();
-                    robot.setXPos(simulationCanvas.getWidth() / 2);
-                    robot.setYPos(simulationCanvas.getHeight() / 2);
-                    robot.start();
-                } else if (robot.isPaused()) {
-                    robot.resume();
+                    arena.start();
+                    if (speedChoiceBox.getValue() == SimulationSpeed.INSTANT) {
+                        arena.finish();
+                    }
+                } else if (arena.isPaused()) {
+                    arena.resume();
                 }
             } else {
-                if (robot.isRunning()) {
-                    robot.pause();
+                if (arena.isRunning()) {
+                    arena.pause();
                 }
             }
         });
 
         stopButton.setGraphic(stopIcon);
         stopButton.setOnAction(event -> {
-            robot.stop();
+            arena.stop();
         });
         stopButton.setDisable(true);
 
         zoomOutButton.setGraphic(zoomOutIcon);
         zoomOutButton.setOnAction(event -> {
             simulationScale *= 0.9;
-            robot.setSimulationScale(simulationScale, simulationCanvas.getWidth() / 2, simulationCanvas.getHeight() / 2);
-            redraw();
+            arena.setRobotScale(simulationScale);
+            requestRedraw();
         });
 
         zoomInButton.setGraphic(zoomInIcon);
         zoomInButton.setOnAction(event -> {
             simulationScale *= 1.1;
-            robot.setSimulationScale(simulationScale, simulationCanvas.getWidth() / 2, simulationCanvas.getHeight() / 2);
-            redraw();
+            arena.setRobotScale(simulationScale);
+            requestRedraw();
         });
 
-        robot.addStateListener(newState -> {
+        speedChoiceBox.getItems().setAll(SimulationSpeed.values());
+        speedChoiceBox.setValue(SimulationSpeed.NORMAL);
+        speedChoiceBox.setOnAction(event -> {
+            SimulationSpeed speed = speedChoiceBox.getValue();
+            if (speed == SimulationSpeed.INSTANT) {
+                if (!arena.isIdle()) {
+                    arena.finish();
+                }
+            } else {
+                arena.setRate(speed.getRate());
+            }
+        });
+
+        arena.addStateListener(newState -> {
             switch (newState) {
                 case IDLE -> {
                     playButton.setSelected(false);
                     playButton.setGraphic(playIcon);
                     stopButton.setDisable(true);
+                    // Shows the paths of finished runs, or clears them after stopping
+                    requestRedraw();
+                    reportCollision();
                 }
                 case PAUSED -> {
                     playButton.setSelected(false);
@@ -288,6 +441,7 @@ public class MainController implements Initializable {
                     playButton.setSelected(true);
                     playButton.setGraphic(pauseIcon);
                     stopButton.setDisable(false);
+                    requestRedraw();
                 }
             }
         });
@@ -302,26 +456,25 @@ public class MainController implements Initializable {
             FileChooser fileChooser = new FileChooser();
             fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
             fileChooser.setTitle("Roboteranweisungen laden");
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Roboteranweisungen", "*.rbt"));
+            fileChooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("Roboteranweisungen", "*.rbt", "*." + BinaryProjectFormat.FILE_EXTENSION),
+                    new FileChooser.ExtensionFilter("Roboteranweisungen (binär)", "*." + BinaryProjectFormat.FILE_EXTENSION)
+            );
             File chosenFile = fileChooser.showOpenDialog(graphicalStatements.getScene().getWindow());
             if (chosenFile != null) {
+                reset(false);
                 try {
-                    String json = Files.readString(chosenFile.toPath(), StandardCharsets.UTF_8);
-                    List<ExportedCodeBlock> exportedCodeBlocks = IOHelper.translateToStatements(json);
-                    reset(false);
-                    for (ExportedCodeBlock exportedCodeBlock: exportedCodeBlocks) {
-                        newBlock = addCodeBlock(
-                                new CodeBlock(
-                                        instructionImageMap.get(exportedCodeBlock.getInstruction()),
-                                        RobotInstruction.INIT.getValue().equals(exportedCodeBlock.getInstruction()) ? flow.getStartCommand() : new FlowCommand(RobotInstruction.byValue(exportedCodeBlock.getInstruction()))
-                                )
-                        );
-                        newBlock.setLayoutX(exportedCodeBlock.getPosX());
-                        newBlock.setLayoutY(exportedCodeBlock.getPosY());
-                        checkIntersection(newBlock);
+                    if (BinaryProjectFormat.isBinaryFile(chosenFile.toPath())) {
+                        BinaryProjectFormat.readFlow(chosenFile.toPath(), flow, this::addLoadedCodeBlock);
+                    } else {
+                        try (BufferedReader reader = Files.newBufferedReader(chosenFile.toPath(), StandardCharsets.UTF_8)) {
+                            IOHelper.readFlow(reader, flow, this::addLoadedCodeBlock);
+                        }
                     }
-                } catch (IOException e) {
+                    finishLoading();
+                } catch (IOException | RuntimeException e) {
                     e.printStackTrace();
+                    reset(true);
                 }
             }
         });
@@ -331,12 +484,20 @@ public class MainController implements Initializable {
             fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
             fileChooser.setInitialFileName("anweisungen.rbt");
             fileChooser.setTitle("Roboteranweisungen speichern");
-            fileChooser.getExtensionFilters().add(new FileChooser.ExtensionFilter("Roboteranweisungen", "*.rbt"));
+            fileChooser.getExtensionFilters().addAll(
+                    new FileChooser.ExtensionFilter("Roboteranweisungen", "*.rbt"),
+                    new FileChooser.ExtensionFilter("Roboteranweisungen (binär)", "*." + BinaryProjectFormat.FILE_EXTENSION)
+            );
             File chosenFile = fileChooser.showSaveDialog(graphicalStatements.getScene().getWindow());
             if (chosenFile != null) {
-                String json = IOHelper.translateToJson(codeBlockMap);
                 try {
-                    Files.writeString(chosenFile.toPath(), json, StandardCharsets.UTF_8, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                    if (BinaryProjectFormat.isBinaryFile(chosenFile.toPath())) {
+                        BinaryProjectFormat.write(chosenFile.toPath(), codeBlockMap);
+                    } else {
+                        try (BufferedWriter writer = Files.newBufferedWriter(chosenFile.toPath(), StandardCharsets.UTF_8)) {
+                            IOHelper.writeJson(writer, codeBlockMap);
+                        }
+                    }
                 } catch (IOException e) {
                     e.printStackTrace();
                 }
@@ -345,24 +506,30 @@ public class MainController implements Initializable {
 
         noMazeMenuItem.setOnAction(event -> {
             mazeNumber = 0;
-            redraw();
+            requestRedraw();
         });
 
         maze1MenuItem.setOnAction(event -> {
             mazeNumber = 1;
-            redraw();
+            requestRedraw();
         });
 
         maze2MenuItem.setOnAction(event -> {
             mazeNumber = 2;
-            redraw();
+            requestRedraw();
         });
 
         maze3MenuItem.setOnAction(event -> {
             mazeNumber = 3;
-            redraw();
+            requestRedraw();
         });
 
+        undoMenuItem.setOnAction(event -> undo());
+        redoMenuItem.setOnAction(event -> redo());
+
+        addRobotsMenuItem.setOnAction(event -> addRobots());
+        removeRobotsMenuItem.setOnAction(event -> removeRobots());
+
         transferMenuItem.setOnAction(event -> openTransferDialog());
 
         aboutMenuItem.setOnAction(event -> {
@@ -373,18 +540,90 @@ public class MainController implements Initializable {
             alert.showAndWait();
         });
 
+        journal.start(
+                recoveredBlocks -> Platform.runLater(() -> offerRecovery(recoveredBlocks)),
+                exception -> Platform.runLater(() -> reportAutosaveFailure(exception))
+        );
+
         new Thread(() -> {
             try {
                 Thread.sleep(500);
-                robot.setXPos(simulationCanvas.getWidth() / 2);
-                robot.setYPos(simulationCanvas.getHeight() / 2);
-                robot.setVisible(true);
+                Platform.runLater(() -> {
+                    arena.setOrigin(simulationCanvas.getWidth() / 2, simulationCanvas.getHeight() / 2);
+                    arena.setVisible(true);
+                });
             } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
         }).start();
     }
 
+    /**
+     * Writes the outstanding autosave entries and removes the autosave, called when the application exits normally.
+     */
+    void shutdown() {
+        try {
+            journal.close();
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void reportAutosaveFailure(IOException exception) {
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Automatisches Speichern");
+        alert.setHeaderText("Die Roboteranweisungen werden nicht automatisch gespeichert");
+        alert.setContentText("Ursache: " + exception.getMessage());
+        alert.show();
+    }
+
+    private void offerRecovery(List<ExportedCodeBlock> recoveredBlocks) {
+        Alert alert = new Alert(Alert.AlertType.CONFIRMATION);
+        alert.setTitle("Wiederherstellen");
+        alert.setHeaderText("Das Programm wurde nicht richtig beendet");
+        alert.setContentText("Sollen die zuletzt bearbeiteten Roboteranweisungen wiederhergestellt werden?");
+        Optional<ButtonType> result = alert.showAndWait();
+        if (result.isPresent() && result.get() == ButtonType.OK) {
+            reset(false);
+            try {
+                IOHelper.translateToFlow(recoveredBlocks, flow, this::addLoadedCodeBlock);
+                // Autosaves of earlier versions could miss the start block, which can't be added from the templates
+                if (!codeBlockMap.containsKey(flow.getStartCommand())) {
+                    addStartBlock();
+                }
+                finishLoading();
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+                reset(true);
+            }
+        }
+
+        journal.resume();
+    }
+
+    private void addLoadedCodeBlock(ExportedCodeBlock exportedCodeBlock, FlowCommand flowCommand) {
+        CodeBlock codeBlock = addCodeBlock(new CodeBlock(instructionImageMap.get(exportedCodeBlock.getInstruction()), flowCommand));
+        codeBlock.setLayoutX(exportedCodeBlock.getPosX());
+        codeBlock.setLayoutY(exportedCodeBlock.getPosY());
+    }
+
+    /**
+     * Loaded commands are linked directly, so their links are journaled here at once.
+     */
+    private void finishLoading() {
+        for (FlowCommand flowCommand: codeBlockMap.keySet()) {
+            if (flowCommand.hasNext()) {
+                journal.recordLink(flowCommand, flowCommand.getNext());
+            }
+        }
+        commitMoves(false);
+        history.clear();
+
+        updateSourceCode();
+        updateFlowControls();
+        updateHistoryControls();
+    }
+
     void openTransferDialog() {
         FXMLLoader fxmlLoader = new FXMLLoader(TransferDialogController.class.getResource("transfer-dialog.fxml"));
         try {
@@ -404,130 +643,459 @@ public class MainController implements Initializable {
     }
 
     private void reset(boolean createStartBlock) {
-        for (CodeBlock codeBlock: codeBlockMap.values()) {
-            graphicalStatements.getChildren().remove(codeBlock);
+        journal.recordReset();
+        if (blockCanvas != null) {
+            blockCanvas.clear();
+        } else {
+            programLayer.getChildren().clear();
         }
 
         codeBlockMap.clear();
+        blockIndex.clear();
+        moveOrigins.clear();
+        visibleBlocks.clear();
         flow.reset();
-        gridOffset = new Point2D(0, 0);
-        redraw();
+        viewOffset = new Point2D(0, 0);
+        updateViewport();
 
         if (createStartBlock) {
-            CodeBlock startBlock = addCodeBlock(new CodeBlock(instructionImageMap.get(RobotInstruction.INIT.getValue()), flow.getStartCommand()));
-            startBlock.setLayoutX(templateBlocksMaxX + 150);
-            startBlock.setLayoutY(50);
+            addStartBlock();
+            commitMoves(false);
         }
 
         flow.updateStates();
+        history.clear();
         updateLooks();
+        updateSourceCode();
+        updateHistoryControls();
+    }
+
+    /**
+     * A tile of the statements grid with one line on its left and top edge
+     */
+    private static WritableImage createGridTile(Color lineColor) {
+        WritableImage tile = new WritableImage(GRID_GAP, GRID_GAP);
+        PixelWriter pixelWriter = tile.getPixelWriter();
+        for (int i = 0; i < GRID_GAP; i++) {
+            pixelWriter.setColor(i, 0, lineColor);
+            pixelWriter.setColor(0, i, lineColor);
+        }
+
+        return tile;
     }
 
     private void updateSourceCode() {
-        codeEditor.setText(flow.generateSourceCode());
+        sourceCodeView.update();
     }
 
+    /**
+     * Gives every robot a fresh simulation of its program on the current maze. In a maze all robots start on its
+     * entrance, otherwise they start next to each other.
+     */
     private void simulateCommands() {
-        FlowCommand currentCommand = flow.getStartCommand();
-        while (currentCommand.hasNext()) {
-            currentCommand = currentCommand.getNext();
-            switch (currentCommand.getInstruction()) {
-                case FORWARD, BACKWARDS, TURN_LEFT, TURN_RIGHT, MELODY, BLINK -> robot.addCommand(currentCommand.getInstruction());
+        Maze maze = Maze.byNumber(mazeNumber);
+        robot.setSimulation(new SimulationEngine(flow, maze));
+        for (Map.Entry<Robot, Flow> loadedRobot: loadedRobots.entrySet()) {
+            loadedRobot.getKey().setSimulation(new SimulationEngine(loadedRobot.getValue(), maze));
+        }
+
+        List<Robot> robots = arena.getRobots();
+        for (int i = 0; i < robots.size(); i++) {
+            robots.get(i).setStartOffset(maze != null ? 0 : (i - (robots.size() - 1) / 2d) * ROBOT_SPACING, 0);
+        }
+    }
+
+    /**
+     * Lets further robots run the programs of the chosen files next to the program of the editor.
+     */
+    private void addRobots() {
+        FileChooser fileChooser = new FileChooser();
+        fileChooser.setInitialDirectory(new File(System.getProperty("user.home")));
+        fileChooser.setTitle("Roboter hinzufügen");
+        fileChooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Roboteranweisungen", "*.rbt", "*." + BinaryProjectFormat.FILE_EXTENSION)
+        );
+        List<File> chosenFiles = fileChooser.showOpenMultipleDialog(graphicalStatements.getScene().getWindow());
+        if (chosenFiles == null) {
+            return;
+        }
+
+        arena.stop();
+        List<String> skippedFiles = new ArrayList<>();
+        for (File chosenFile: chosenFiles) {
+            try {
+                Flow loadedFlow = IOHelper.readFlow(chosenFile.toPath());
+                if (!loadedFlow.isComplete()) {
+                    skippedFiles.add(chosenFile.getName());
+                    continue;
+                }
+
+                Robot loadedRobot = new Robot(robotImage, Color.hsb(((loadedRobots.size() + 1) * ROBOT_HUE_STEP) % 360, 1, 1));
+                loadedRobots.put(loadedRobot, loadedFlow);
+                arena.addRobot(loadedRobot);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+                skippedFiles.add(chosenFile.getName());
             }
         }
+        arena.setRobotScale(simulationScale);
+        removeRobotsMenuItem.setDisable(loadedRobots.isEmpty());
+
+        if (!skippedFiles.isEmpty()) {
+            Alert alert = new Alert(Alert.AlertType.WARNING);
+            alert.setTitle("Roboter hinzufügen");
+            alert.setHeaderText("Nicht alle Roboter konnten hinzugefügt werden");
+            alert.setContentText("Unvollständig oder nicht lesbar: " + String.join(", ", skippedFiles));
+            alert.showAndWait();
+        }
     }
 
-    private void drawMaze1(GraphicsContext gc) {
-        gc.setFill(Color.YELLOW);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 10, simulationCanvas.getHeight() / 2 - 210, 20, 220);
-        gc.fillRect(simulationCanvas.getWidth() / 2, simulationCanvas.getHeight() / 2 - 210, 210, 20);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 10 + 200, simulationCanvas.getHeight() / 2 - 200, 20, 210);
-        gc.fillRect(simulationCanvas.getWidth() / 2 + 100, simulationCanvas.getHeight() / 2 - 10, 110, 20);
+    private void removeRobots() {
+        arena.stop();
+        for (Robot loadedRobot: loadedRobots.keySet()) {
+            arena.removeRobot(loadedRobot);
+        }
+        loadedRobots.clear();
+        removeRobotsMenuItem.setDisable(true);
     }
 
-    private void drawMaze2(GraphicsContext gc) {
-        drawMaze1(gc);
-        gc.fillRect(simulationCanvas.getWidth() / 2 + 100 - 10, simulationCanvas.getHeight() / 2 - 10, 20, 210);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 100, simulationCanvas.getHeight() / 2 + 200 - 10, 210, 20);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 100 - 10, simulationCanvas.getHeight() / 2 + 100, 20, 110);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 300, simulationCanvas.getHeight() / 2 + 100 - 10, 210, 20);
+    private void drawMaze(GraphicsContext gc, Maze maze, double width, double height) {
+        gc.setFill(Color.YELLOW);
+        for (Maze.Lane lane: maze.getLanes()) {
+            gc.fillRect(width / 2 + lane.getX(), height / 2 + lane.getY(), lane.getWidth(), lane.getHeight());
+        }
     }
 
-    private void drawMaze3(GraphicsContext gc) {
-        drawMaze2(gc);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 300 - 10, simulationCanvas.getHeight() / 2 - 200, 20, 310);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 300 - 10, simulationCanvas.getHeight() / 2 - 200 - 10, 110, 20);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 200 - 10, simulationCanvas.getHeight() / 2 - 200 - 10, 20, 110);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 200 - 10, simulationCanvas.getHeight() / 2 - 100 - 10, 110, 20);
-        gc.fillRect(simulationCanvas.getWidth() / 2 - 100 - 10, simulationCanvas.getHeight() / 2 - 200 - 10, 20, 120);
+    /**
+     * Redraws both canvases once on the next pulse, however often it is requested until then, e.g. for the width and
+     * height changes of one resize.
+     */
+    private void requestRedraw() {
+        if (!redrawScheduled) {
+            redrawScheduled = true;
+            Platform.runLater(this::redraw);
+        }
     }
 
     private void redraw() {
+        redrawScheduled = false;
+        drawSimulation();
+        drawStatementsGrid();
+
+        arena.setOrigin(simulationCanvas.getWidth() / 2, simulationCanvas.getHeight() / 2);
+    }
+
+    /**
+     * Draws the cached background of the simulation, which is only rendered again if the size, the scale or the maze
+     * changed, and the paths of the robots whose programs have finished.
+     */
+    private void drawSimulation() {
+        int width = (int) Math.ceil(simulationCanvas.getWidth());
+        int height = (int) Math.ceil(simulationCanvas.getHeight());
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (simulationBackground == null || simulationBackground.getWidth() != width || simulationBackground.getHeight() != height || simulationBackgroundScale != simulationScale || simulationBackgroundMaze != mazeNumber) {
+            simulationBackground = renderSimulationBackground(width, height);
+            simulationBackgroundScale = simulationScale;
+            simulationBackgroundMaze = mazeNumber;
+        }
+
         GraphicsContext gc = simulationCanvas.getGraphicsContext2D();
+        gc.drawImage(simulationBackground, 0, 0);
+
+        for (Robot robot: arena.getRobots()) {
+            if (robot.isFinished() && robot.getPath().size() > 1) {
+                drawPath(gc, robot, width / 2d, height / 2d);
+            }
+        }
+    }
+
+    private void drawPath(GraphicsContext gc, Robot robot, double originX, double originY) {
+        List<SimulationState> path = robot.getPath();
+        double offsetX = originX + robot.getStartOffset().getX();
+        double offsetY = originY + robot.getStartOffset().getY();
+
+        gc.setStroke(robot.getTraceColor());
+        gc.setLineWidth(PATH_WIDTH);
+        gc.beginPath();
+        gc.moveTo(offsetX + path.get(0).getX(), offsetY + path.get(0).getY());
+        for (SimulationState state: path) {
+            gc.lineTo(offsetX + state.getX(), offsetY + state.getY());
+        }
+        gc.stroke();
+        gc.setLineWidth(1);
+
+        SimulationState end = path.get(path.size() - 1);
+        gc.setFill(robot.getTraceColor());
+        gc.fillOval(offsetX + end.getX() - PATH_WIDTH * 2, offsetY + end.getY() - PATH_WIDTH * 2, PATH_WIDTH * 4, PATH_WIDTH * 4);
+
+        // Crosses where a move left the lanes
+        gc.setStroke(Color.WHITE);
+        for (SimulationState state: path) {
+            if (state.hasCollided()) {
+                double x = offsetX + state.getX();
+                double y = offsetY + state.getY();
+                gc.strokeLine(x - PATH_WIDTH * 2, y - PATH_WIDTH * 2, x + PATH_WIDTH * 2, y + PATH_WIDTH * 2);
+                gc.strokeLine(x - PATH_WIDTH * 2, y + PATH_WIDTH * 2, x + PATH_WIDTH * 2, y - PATH_WIDTH * 2);
+            }
+        }
+    }
+
+    /**
+     * Tells which command of the editor program first left the lanes of the maze and pans the editor to its block.
+     */
+    private void reportCollision() {
+        if (!robot.isFinished()) {
+            return;
+        }
+
+        SimulationState collision = null;
+        for (SimulationState state: robot.getPath()) {
+            if (state.hasCollided()) {
+                collision = state;
+                break;
+            }
+        }
+
+        if (collision == null) {
+            return;
+        }
+
+        CodeBlock codeBlock = codeBlockMap.get(collision.getCommand());
+        if (codeBlock != null && !viewportBounds().contains(codeBlock.getLayoutX(), codeBlock.getLayoutY())) {
+            viewOffset = new Point2D(
+                    (graphicalStatements.getWidth() - CodeBlock.SIZE_WIDTH) / 2 - codeBlock.getLayoutX(),
+                    (graphicalStatements.getHeight() - CodeBlock.SIZE_HEIGHT) / 2 - codeBlock.getLayoutY()
+            );
+            updateViewport();
+        }
+
+        Alert alert = new Alert(Alert.AlertType.WARNING);
+        alert.setTitle("Kollision");
+        alert.setHeaderText("Der Roboter hat die Bahn verlassen");
+        alert.setContentText("Schritt " + collision.getStep() + ": " + Translator.translate(collision.getCommand().getInstructionText()));
+        // Not waiting, the simulation may end during an animation pulse
+        alert.show();
+    }
+
+    private WritableImage renderSimulationBackground(int width, int height) {
+        Canvas canvas = new Canvas(width, height);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
         gc.setImageSmoothing(true);
         gc.setFill(Color.rgb(0, 0, 50));
-        gc.fillRect(0, 0, simulationCanvas.getWidth(), simulationCanvas.getHeight());
+        gc.fillRect(0, 0, width, height);
         gc.setStroke(Color.gray(0.3));
-        gc.strokeLine(simulationCanvas.getWidth() / 2, 0, simulationCanvas.getWidth() / 2, simulationCanvas.getHeight());
-        for (double x = GRID_GAP * simulationScale; x < simulationCanvas.getWidth() / 2; x += GRID_GAP * simulationScale) {
-            gc.strokeLine(simulationCanvas.getWidth() / 2 - x, 0, simulationCanvas.getWidth() / 2 - x, simulationCanvas.getHeight());
-            gc.strokeLine(simulationCanvas.getWidth() / 2 + x, 0, simulationCanvas.getWidth() / 2 + x, simulationCanvas.getHeight());
+        gc.strokeLine(width / 2d, 0, width / 2d, height);
+        for (double x = GRID_GAP * simulationScale; x < width / 2d; x += GRID_GAP * simulationScale) {
+            gc.strokeLine(width / 2d - x, 0, width / 2d - x, height);
+            gc.strokeLine(width / 2d + x, 0, width / 2d + x, height);
         }
-        gc.strokeLine(0, simulationCanvas.getHeight() / 2, simulationCanvas.getWidth(), simulationCanvas.getHeight() / 2);
-        for (double y = GRID_GAP * simulationScale; y < simulationCanvas.getHeight() / 2; y += GRID_GAP * simulationScale) {
-            gc.strokeLine(0, simulationCanvas.getHeight() / 2 - y, simulationCanvas.getWidth(), simulationCanvas.getHeight() / 2 - y);
-            gc.strokeLine(0, simulationCanvas.getHeight() / 2 + y, simulationCanvas.getWidth(), simulationCanvas.getHeight() / 2 + y);
+        gc.strokeLine(0, height / 2d, width, height / 2d);
+        for (double y = GRID_GAP * simulationScale; y < height / 2d; y += GRID_GAP * simulationScale) {
+            gc.strokeLine(0, height / 2d - y, width, height / 2d - y);
+            gc.strokeLine(0, height / 2d + y, width, height / 2d + y);
         }
 
-        switch (mazeNumber) {
-            case 1 -> drawMaze1(gc);
-            case 2 -> drawMaze2(gc);
-            case 3 -> drawMaze3(gc);
+        Maze maze = Maze.byNumber(mazeNumber);
+        if (maze != null) {
+            drawMaze(gc, maze, width, height);
         }
 
+        return canvas.snapshot(null, new WritableImage(width, height));
+    }
+
+    private void drawStatementsGrid() {
         GraphicsContext grid = gridCanvas.getGraphicsContext2D();
         grid.clearRect(0, 0, gridCanvas.getWidth(), gridCanvas.getHeight());
-        grid.setStroke(Color.gray(0.9));
-        for (int x = -1 + ((int) gridOffset.getX() % GRID_GAP); x < gridCanvas.getWidth(); x += GRID_GAP) {
-            grid.strokeLine(x, 0, x, gridCanvas.getHeight());
-        }
-        for (int y = -1 + ((int) gridOffset.getY() % GRID_GAP); y < gridCanvas.getHeight(); y += GRID_GAP) {
-            grid.strokeLine(0, y, gridCanvas.getWidth(), y);
-        }
+        // One tile filled repeatedly, anchored at the view offset so the grid moves along when panning
+        grid.setFill(new ImagePattern(statementsGridTile, -1 + ((int) viewOffset.getX() % GRID_GAP), -1 + ((int) viewOffset.getY() % GRID_GAP), GRID_GAP, GRID_GAP, false));
+        grid.fillRect(0, 0, gridCanvas.getWidth(), gridCanvas.getHeight());
 
         grid.setFill(Color.WHITE);
         grid.fillRect(0, 0, templateBlocksMaxX, templateBlocksMaxY);
+    }
 
-        if (robot.isIdle()) {
-            robot.setXPos(simulationCanvas.getWidth() / 2);
-            robot.setYPos(simulationCanvas.getHeight() / 2);
+    /**
+     * Applies a changed view offset. Only the program layer is translated, so the cost does not depend on the number of
+     * blocks but only on the blocks entering or leaving the viewport.
+     */
+    private void updateViewport() {
+        programLayer.setTranslateX(viewOffset.getX());
+        programLayer.setTranslateY(viewOffset.getY());
+        if (blockCanvas != null) {
+            blockCanvas.setViewOffset(viewOffset.getX(), viewOffset.getY());
         }
+        updateVisibleBlocks();
+        drawStatementsGrid();
+    }
+
+    /**
+     * The visible part of the statements pane in program coordinates
+     */
+    private Bounds viewportBounds() {
+        return new BoundingBox(-viewOffset.getX(), -viewOffset.getY(), graphicalStatements.getWidth(), graphicalStatements.getHeight());
+    }
+
+    private void updateVisibleBlocks() {
+        if (blockCanvas != null) {
+            return;
+        }
+
+        Bounds viewport = viewportBounds();
+        HashSet<CodeBlock> blocksInViewport = new HashSet<>(blockIndex.query(viewport.getMinX(), viewport.getMinY(), viewport.getWidth(), viewport.getHeight()));
+        for (CodeBlock codeBlock: visibleBlocks) {
+            if (!blocksInViewport.contains(codeBlock)) {
+                codeBlock.setVisible(false);
+            }
+        }
+
+        for (CodeBlock codeBlock: blocksInViewport) {
+            codeBlock.setVisible(true);
+        }
+
+        visibleBlocks.clear();
+        visibleBlocks.addAll(blocksInViewport);
+    }
+
+    private void updateVisibility(CodeBlock codeBlock) {
+        if (blockCanvas != null) {
+            return;
+        }
+
+        boolean visible = viewportBounds().intersects(blockBounds(codeBlock));
+        codeBlock.setVisible(visible);
+        if (visible) {
+            visibleBlocks.add(codeBlock);
+        } else {
+            visibleBlocks.remove(codeBlock);
+        }
+    }
+
+    private void addStartBlock() {
+        CodeBlock startBlock = addCodeBlock(new CodeBlock(instructionImageMap.get(RobotInstruction.INIT.getValue()), flow.getStartCommand()));
+        startBlock.setLayoutX(templateBlocksMaxX + 150);
+        startBlock.setLayoutY(50);
     }
 
     private CodeBlock addCodeBlock(CodeBlock codeBlock) {
+        makeDraggable(codeBlock);
+        codeBlock.layoutXProperty().addListener((observable, oldX, newX) -> onCodeBlockMoved(codeBlock, oldX.doubleValue(), codeBlock.getLayoutY()));
+        codeBlock.layoutYProperty().addListener((observable, oldY, newY) -> onCodeBlockMoved(codeBlock, codeBlock.getLayoutX(), oldY.doubleValue()));
+        attachCodeBlock(codeBlock);
+        history.record(new BlockEdit(codeBlock, true));
+
+        return codeBlock;
+    }
+
+    private void attachCodeBlock(CodeBlock codeBlock) {
         codeBlockMap.put(codeBlock.getFlowCommand(), codeBlock);
         if (codeBlock.getFlowCommand().getInstruction() != RobotInstruction.INIT) {
             flow.addCommand(codeBlock.getFlowCommand());
         }
-        makeDraggable(codeBlock);
-        graphicalStatements.getChildren().add(codeBlock);
-
-        return codeBlock;
+        blockIndex.put(codeBlock, codeBlock.getLayoutX(), codeBlock.getLayoutY(), CodeBlock.SIZE_WIDTH, CodeBlock.SIZE_HEIGHT);
+        if (blockCanvas != null) {
+            blockCanvas.add(codeBlock);
+        } else {
+            programLayer.getChildren().add(codeBlock);
+            updateVisibility(codeBlock);
+        }
+        journal.recordAdd(codeBlock.getFlowCommand(), codeBlock.getLayoutX(), codeBlock.getLayoutY());
     }
 
-    private void removeCodeBlock(CodeBlock codeBlock) {
+    private void detachCodeBlock(CodeBlock codeBlock) {
         codeBlockMap.remove(codeBlock.getFlowCommand());
+        blockIndex.remove(codeBlock);
+        moveOrigins.remove(codeBlock);
+        visibleBlocks.remove(codeBlock);
         flow.removeCommand(codeBlock.getFlowCommand());
-        graphicalStatements.getChildren().remove(codeBlock);
+        if (blockCanvas != null) {
+            blockCanvas.remove(codeBlock);
+        } else {
+            programLayer.getChildren().remove(codeBlock);
+        }
+        journal.recordDelete(codeBlock.getFlowCommand());
+    }
+
+    private void onCodeBlockMoved(CodeBlock codeBlock, double oldX, double oldY) {
+        if (codeBlockMap.get(codeBlock.getFlowCommand()) == codeBlock) {
+            blockIndex.put(codeBlock, codeBlock.getLayoutX(), codeBlock.getLayoutY(), CodeBlock.SIZE_WIDTH, CodeBlock.SIZE_HEIGHT);
+            moveOrigins.putIfAbsent(codeBlock, new Point2D(oldX, oldY));
+            if (blockCanvas != null) {
+                blockCanvas.invalidate(oldX, oldY);
+                blockCanvas.invalidate(codeBlock);
+            } else {
+                updateVisibility(codeBlock);
+            }
+        }
+    }
+
+    /**
+     * Journals the final positions of the blocks moved since the last call. Called when a gesture ends, so a drag is
+     * journaled once and not for every mouse event.
+     *
+     * @param undoable whether the moves are recorded in the undo history, which is not wanted for panning
+     */
+    private void commitMoves(boolean undoable) {
+        for (Map.Entry<CodeBlock, Point2D> moveOrigin: moveOrigins.entrySet()) {
+            CodeBlock codeBlock = moveOrigin.getKey();
+            Point2D origin = moveOrigin.getValue();
+            journal.recordMove(codeBlock.getFlowCommand(), codeBlock.getLayoutX(), codeBlock.getLayoutY());
+            if (undoable && (origin.getX() != codeBlock.getLayoutX() || origin.getY() != codeBlock.getLayoutY())) {
+                history.record(new MoveEdit(codeBlock, origin.getX(), origin.getY(), codeBlock.getLayoutX(), codeBlock.getLayoutY()));
+            }
+        }
+        moveOrigins.clear();
+    }
+
+    private void linkCommands(FlowCommand previous, FlowCommand next) {
+        flow.link(previous, next);
+        journal.recordLink(previous, next);
+        history.record(new LinkEdit(previous, next, true));
+    }
+
+    private void unlinkCommands(FlowCommand previous, FlowCommand next) {
+        flow.unlink(previous, next);
+        journal.recordUnlink(previous, next);
+        history.record(new LinkEdit(previous, next, false));
+    }
+
+    private void removeCodeBlock(CodeBlock codeBlock) {
         if (codeBlock.getFlowCommand().hasPrevious()) {
-            codeBlock.getFlowCommand().getPrevious().setNext(null);
-            codeBlock.getFlowCommand().setPrevious(null);
+            unlinkCommands(codeBlock.getFlowCommand().getPrevious(), codeBlock.getFlowCommand());
         }
 
         if (codeBlock.getFlowCommand().hasNext()) {
-            codeBlock.getFlowCommand().getNext().setPrevious(null);
-            codeBlock.getFlowCommand().setNext(null);
+            unlinkCommands(codeBlock.getFlowCommand(), codeBlock.getFlowCommand().getNext());
         }
+        detachCodeBlock(codeBlock);
+        history.record(new BlockEdit(codeBlock, false));
+
+        updateSourceCode();
+        updateFlowControls();
+    }
+
+    private void undo() {
+        history.undo();
+        finishHistoryStep();
+    }
+
+    private void redo() {
+        history.redo();
+        finishHistoryStep();
+    }
+
+    private void finishHistoryStep() {
+        commitMoves(false);
+        updateSourceCode();
+        updateFlowControls();
+        updateHistoryControls();
+    }
+
+    private void updateHistoryControls() {
+        undoMenuItem.setDisable(!history.canUndo());
+        redoMenuItem.setDisable(!history.canRedo());
     }
 
     private void configureTemplateBlock(CodeBlock templateBlock) {
@@ -548,10 +1116,14 @@ public class MainController implements Initializable {
                 return;
             }
 
+            history.beginCompound();
             newBlock = addCodeBlock(new CodeBlock(templateBlock.getImgPath(), new FlowCommand(templateBlock.getFlowCommand().getInstruction())));
-            newBlock.setLayoutX(templateBlock.getLayoutX());
-            newBlock.setLayoutY(templateBlock.getLayoutY());
+            newBlock.setLayoutX(templateBlock.getLayoutX() - viewOffset.getX());
+            newBlock.setLayoutY(templateBlock.getLayoutY() - viewOffset.getY());
             newBlock.setHovered(true);
+            if (blockCanvas != null) {
+                blockCanvas.setHoveredBlock(newBlock);
+            }
             newBlock.getOnMousePressed().handle(event);
         });
 
@@ -570,6 +1142,22 @@ public class MainController implements Initializable {
         });
     }
 
+    /**
+     * Bounds of a block in program coordinates, from its layout position. Unlike getBoundsInParent this also works for
+     * blocks that are drawn on the block canvas and not part of the scene graph.
+     */
+    private static Bounds blockBounds(CodeBlock codeBlock) {
+        return new BoundingBox(codeBlock.getLayoutX(), codeBlock.getLayoutY(), CodeBlock.SIZE_WIDTH, CodeBlock.SIZE_HEIGHT);
+    }
+
+    /**
+     * Bounds of the trash area in program coordinates
+     */
+    private Bounds trashBounds() {
+        Bounds bounds = trashArea.getBoundsInParent();
+        return new BoundingBox(bounds.getMinX() - viewOffset.getX(), bounds.getMinY() - viewOffset.getY(), bounds.getWidth(), bounds.getHeight());
+    }
+
     private void checkIntersection(CodeBlock codeBlockNode) {
         boolean intersects = false;
         HashSet<CodeBlock> blockedBlocks = new HashSet<>();
@@ -584,23 +1172,28 @@ public class MainController implements Initializable {
             }
         }
 
-        for (CodeBlock codeBlock: codeBlockMap.values()) {
+        // Snapping moves the reference block by at most one block height, so candidates are searched with that margin
+        List<CodeBlock> candidates = blockIndex.query(
+                referenceBlock.getLayoutX() - 1,
+                referenceBlock.getLayoutY() - CodeBlock.SIZE_HEIGHT - 1,
+                CodeBlock.SIZE_WIDTH + 2,
+                3 * CodeBlock.SIZE_HEIGHT + 2
+        );
+        for (CodeBlock codeBlock: candidates) {
             if (blockedBlocks.contains(codeBlock)) {
                 continue;
             }
 
-            if (referenceBlock.getBoundsInParent().intersects(codeBlock.getBoundsInParent())) {
+            if (blockBounds(referenceBlock).intersects(blockBounds(codeBlock))) {
                 intersects = true;
                 if (codeBlockNode.getFlowCommand() != flow.getStartCommand() && referenceBlock.getLayoutY() > codeBlock.getLayoutY() && referenceBlock.getFlowCommand().getInstruction().isPreviousAllowed() && codeBlock.getFlowCommand().getInstruction().isNextAllowed() && !referenceBlock.getFlowCommand().hasPrevious() && !codeBlock.getFlowCommand().hasNext()) {
                     referenceBlock.setLayoutX(codeBlock.getLayoutX());
                     referenceBlock.setLayoutY(codeBlock.getLayoutY() + CodeBlock.SIZE_HEIGHT + CodeBlock.SPACING);
-                    codeBlock.getFlowCommand().setNext(referenceBlock.getFlowCommand());
-                    referenceBlock.getFlowCommand().setPrevious(codeBlock.getFlowCommand());
+                    linkCommands(codeBlock.getFlowCommand(), referenceBlock.getFlowCommand());
                 } else if (referenceBlock.getFlowCommand().getInstruction().isNextAllowed() && codeBlock.getFlowCommand().getInstruction().isPreviousAllowed() && !referenceBlock.getFlowCommand().hasNext() && !codeBlock.getFlowCommand().hasPrevious()) {
                     referenceBlock.setLayoutX(codeBlock.getLayoutX());
                     referenceBlock.setLayoutY(codeBlock.getLayoutY() - CodeBlock.SIZE_HEIGHT - CodeBlock.SPACING);
-                    codeBlock.getFlowCommand().setPrevious(referenceBlock.getFlowCommand());
-                    referenceBlock.getFlowCommand().setNext(codeBlock.getFlowCommand());
+                    linkCommands(referenceBlock.getFlowCommand(), codeBlock.getFlowCommand());
 
                     if (codeBlockNode.getFlowCommand() == flow.getStartCommand()) {
                         int distanceCounter = 0;
@@ -618,41 +1211,30 @@ public class MainController implements Initializable {
                     codeBlockNode.setLayoutX(codeBlockNode.getDragOriginX());
                     codeBlockNode.setLayoutY(codeBlockNode.getDragOriginY());
                 }
-
-                updateSourceCode();
             }
         }
 
         if (!intersects && codeBlockNode.getFlowCommand() != flow.getStartCommand()) {
             if (codeBlockNode.getFlowCommand().hasNext()) {
-                FlowCommand next = codeBlockNode.getFlowCommand().getNext();
-                next.setPrevious(null);
-                codeBlockNode.getFlowCommand().setNext(null);
+                unlinkCommands(codeBlockNode.getFlowCommand(), codeBlockNode.getFlowCommand().getNext());
             }
 
             if (codeBlockNode.getFlowCommand().hasPrevious()) {
-                FlowCommand previous = codeBlockNode.getFlowCommand().getPrevious();
-                previous.setNext(null);
-                codeBlockNode.getFlowCommand().setPrevious(null);
+                unlinkCommands(codeBlockNode.getFlowCommand().getPrevious(), codeBlockNode.getFlowCommand());
             }
         } else if (codeBlockNode.getFlowCommand() != flow.getStartCommand()) {
-            if (codeBlockNode.getFlowCommand().hasNext() && !codeBlockNode.getBoundsInParent().intersects(codeBlockMap.get(codeBlockNode.getFlowCommand().getNext()).getBoundsInParent())) {
-                FlowCommand next = codeBlockNode.getFlowCommand().getNext();
-                next.setPrevious(null);
-                codeBlockNode.getFlowCommand().setNext(null);
+            if (codeBlockNode.getFlowCommand().hasNext() && !blockBounds(codeBlockNode).intersects(blockBounds(codeBlockMap.get(codeBlockNode.getFlowCommand().getNext())))) {
+                unlinkCommands(codeBlockNode.getFlowCommand(), codeBlockNode.getFlowCommand().getNext());
             }
 
-            if (codeBlockNode.getFlowCommand().hasPrevious() && !codeBlockNode.getBoundsInParent().intersects(codeBlockMap.get(codeBlockNode.getFlowCommand().getPrevious()).getBoundsInParent())) {
-                FlowCommand previous = codeBlockNode.getFlowCommand().getPrevious();
-                previous.setNext(null);
-                codeBlockNode.getFlowCommand().setPrevious(null);
+            if (codeBlockNode.getFlowCommand().hasPrevious() && !blockBounds(codeBlockNode).intersects(blockBounds(codeBlockMap.get(codeBlockNode.getFlowCommand().getPrevious())))) {
+                unlinkCommands(codeBlockNode.getFlowCommand().getPrevious(), codeBlockNode.getFlowCommand());
             }
         }
 
-        flow.updateStates();
-        updateLooks();
-
-        playButton.setDisable(!flow.isComplete());
+        commitMoves(true);
+        updateSourceCode();
+        updateFlowControls();
     }
 
     private void makeDraggable(CodeBlock codeBlockNode) {
@@ -661,10 +1243,11 @@ public class MainController implements Initializable {
                 return;
             }
 
+            history.beginCompound();
             selectClip.play();
             codeBlockNode.setDragDelta(codeBlockNode.getLayoutX() - mouseEvent.getSceneX(), codeBlockNode.getLayoutY() - mouseEvent.getSceneY());
             codeBlockNode.setDragOrigin(codeBlockNode.getLayoutX(), codeBlockNode.getLayoutY());
-            codeBlockNode.getScene().setCursor(Cursor.MOVE);
+            graphicalStatements.getScene().setCursor(Cursor.MOVE);
         });
         codeBlockNode.setOnMouseReleased(mouseEvent -> {
             if (mouseEvent.isMiddleButtonDown()) {
@@ -677,11 +1260,14 @@ public class MainController implements Initializable {
 
             trashArea.setIconColor(Color.RED);
 
-            codeBlockNode.getScene().setCursor(Cursor.HAND);
+            graphicalStatements.getScene().setCursor(Cursor.HAND);
 
-            if (codeBlockNode.getFlowCommand().getInstruction() != RobotInstruction.INIT && codeBlockNode.getBoundsInParent().intersects(trashArea.getBoundsInParent())) {
+            if (codeBlockNode.getFlowCommand().getInstruction() != RobotInstruction.INIT && blockBounds(codeBlockNode).intersects(trashBounds())) {
                 removeCodeBlock(codeBlockNode);
             }
+
+            history.endCompound();
+            updateHistoryControls();
         });
         codeBlockNode.setOnMouseDragged(mouseEvent -> {
             if (mouseEvent.isMiddleButtonDown()) {
@@ -700,7 +1286,7 @@ public class MainController implements Initializable {
                     currentBlock.setLayoutY(codeBlockNode.getLayoutY() + distanceCounter * (CodeBlock.SIZE_HEIGHT + CodeBlock.SPACING));
                     currentBlock.setLayoutX(codeBlockNode.getLayoutX());
                 }
-            } else if (codeBlockNode.getBoundsInParent().intersects(trashArea.getBoundsInParent())) {
+            } else if (blockBounds(codeBlockNode).intersects(trashBounds())) {
                 trashArea.setIconColor(Color.DARKRED);
             } else {
                 trashArea.setIconColor(Color.RED);
@@ -708,13 +1294,13 @@ public class MainController implements Initializable {
         });
         codeBlockNode.setOnMouseEntered(mouseEvent -> {
             if (!mouseEvent.isPrimaryButtonDown()) {
-                codeBlockNode.getScene().setCursor(Cursor.HAND);
+                graphicalStatements.getScene().setCursor(Cursor.HAND);
                 codeBlockNode.setHovered(true);
             }
         });
         codeBlockNode.setOnMouseExited(mouseEvent -> {
             if (!mouseEvent.isPrimaryButtonDown()) {
-                codeBlockNode.getScene().setCursor(Cursor.DEFAULT);
+                graphicalStatements.getScene().setCursor(Cursor.DEFAULT);
                 codeBlockNode.setHovered(false);
             }
         });
@@ -728,4 +1314,130 @@ public class MainController implements Initializable {
         transferMenuItem.setDisable(!flow.isComplete());
     }
 
+    private void updateFlowControls() {
+        boolean complete = flow.isComplete();
+        transferMenuItem.setDisable(!complete);
+        playButton.setDisable(!complete);
+    }
+
+    private class MoveEdit implements UndoHistory.Edit {
+
+        private final CodeBlock codeBlock;
+        private final double fromX;
+        private final double fromY;
+        private final double toX;
+        private final double toY;
+
+        private MoveEdit(CodeBlock codeBlock, double fromX, double fromY, double toX, double toY) {
+            this.codeBlock = codeBlock;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.toX = toX;
+            this.toY = toY;
+        }
+
+        @Override
+        public void undo() {
+            codeBlock.setLayoutX(fromX);
+            codeBlock.setLayoutY(fromY);
+        }
+
+        @Override
+        public void redo() {
+            codeBlock.setLayoutX(toX);
+            codeBlock.setLayoutY(toY);
+        }
+
+    }
+
+    private class LinkEdit implements UndoHistory.Edit {
+
+        private final FlowCommand previous;
+        private final FlowCommand next;
+        private final boolean linked;
+
+        private LinkEdit(FlowCommand previous, FlowCommand next, boolean linked) {
+            this.previous = previous;
+            this.next = next;
+            this.linked = linked;
+        }
+
+        @Override
+        public void undo() {
+            if (linked) {
+                unlinkCommands(previous, next);
+            } else {
+                linkCommands(previous, next);
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (linked) {
+                linkCommands(previous, next);
+            } else {
+                unlinkCommands(previous, next);
+            }
+        }
+
+    }
+
+    private class BlockEdit implements UndoHistory.Edit {
+
+        private final CodeBlock codeBlock;
+        private final boolean added;
+
+        private BlockEdit(CodeBlock codeBlock, boolean added) {
+            this.codeBlock = codeBlock;
+            this.added = added;
+        }
+
+        @Override
+        public void undo() {
+            if (added) {
+                detachCodeBlock(codeBlock);
+            } else {
+                attachCodeBlock(codeBlock);
+            }
+        }
+
+        @Override
+        public void redo() {
+            if (added) {
+                attachCodeBlock(codeBlock);
+            } else {
+                detachCodeBlock(codeBlock);
+            }
+        }
+
+    }
+
+    /**
+     * Speed of the simulation, as simulation milliseconds per real millisecond
+     */
+    private enum SimulationSpeed {
+        NORMAL(1, "1×"),
+        DOUBLE(2, "2×"),
+        FAST(10, "10×"),
+        INSTANT(0, "Sofort");
+
+        private final double rate;
+        private final String label;
+
+        SimulationSpeed(double rate, String label) {
+            this.rate = rate;
+            this.label = label;
+        }
+
+        private double getRate() {
+            return rate;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+
+    }
+
 }
@@ -0,0 +1,214 @@
+package dev.lukasfink.robotprogrammer.components;
+
+import javafx.animation.AnimationTimer;
+import javafx.scene.Group;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * The robots of the simulation. All robots are advanced from one shared tick, which moves the simulation time forward
+ * and lets every robot show its pose at that time, so any number of programs run in lockstep.
+ *
+ * <p>The arena is translated to the origin of the simulation, the start positions of the robots are relative to
+ * it.</p>
+ */
+public class Arena extends Group {
+
+    public enum State {
+        IDLE,
+        RUNNING,
+        PAUSED
+    }
+
+    private final List<Robot> robots;
+
+    private final List<StateListener> stateListeners;
+
+    private final Tick tick;
+
+    private State state;
+
+    /**
+     * Simulation milliseconds per real millisecond
+     */
+    private double rate;
+
+    private double elapsedMillis;
+
+    public Arena() {
+        robots = new ArrayList<>();
+        stateListeners = new LinkedList<>();
+        tick = new Tick();
+        state = State.IDLE;
+        rate = 1d;
+
+        setManaged(false);
+    }
+
+    public void addRobot(Robot robot) {
+        robots.add(robot);
+        getChildren().add(robot);
+    }
+
+    public void removeRobot(Robot robot) {
+        robots.remove(robot);
+        getChildren().remove(robot);
+    }
+
+    public List<Robot> getRobots() {
+        return Collections.unmodifiableList(robots);
+    }
+
+    public void setOrigin(double x, double y) {
+        setTranslateX(x);
+        setTranslateY(y);
+    }
+
+    /**
+     * Sets the simulation speed. A running melody is restarted with the new rate.
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+        Robot.setMelodyRate(rate);
+        if (state == State.RUNNING) {
+            Robot.silence();
+            resumeSounds();
+        }
+    }
+
+    /**
+     * Scales the robots, not their paths.
+     */
+    public void setRobotScale(double scale) {
+        for (Robot robot: robots) {
+            robot.setScaleX(scale);
+            robot.setScaleY(scale);
+        }
+    }
+
+    public boolean isRunning() {
+        return state == State.RUNNING;
+    }
+
+    public boolean isPaused() {
+        return state == State.PAUSED;
+    }
+
+    public boolean isIdle() {
+        return state == State.IDLE;
+    }
+
+    public void addStateListener(StateListener listener) {
+        stateListeners.add(listener);
+    }
+
+    /**
+     * Starts the simulations of all robots from the beginning.
+     */
+    public void start() {
+        for (Robot robot: robots) {
+            robot.reset();
+        }
+        elapsedMillis = 0;
+        tick.restart();
+        changeState(State.RUNNING);
+    }
+
+    /**
+     * Runs the remaining programs of all robots at once and shows where they end.
+     */
+    public void finish() {
+        tick.stop();
+        Robot.silence();
+        for (Robot robot: robots) {
+            robot.finish();
+        }
+        changeState(State.IDLE);
+    }
+
+    public void pause() {
+        if (state == State.RUNNING) {
+            tick.stop();
+            Robot.silence();
+            changeState(State.PAUSED);
+        }
+    }
+
+    public void resume() {
+        if (state == State.PAUSED) {
+            tick.restart();
+            resumeSounds();
+            changeState(State.RUNNING);
+        }
+    }
+
+    /**
+     * Stops the simulation and puts all robots back on their start positions.
+     */
+    public void stop() {
+        tick.stop();
+        Robot.silence();
+        for (Robot robot: robots) {
+            robot.reset();
+        }
+        changeState(State.IDLE);
+    }
+
+    private void resumeSounds() {
+        for (Robot robot: robots) {
+            robot.resumeSounds();
+        }
+    }
+
+    private void advance(double realMillis) {
+        elapsedMillis += realMillis * rate;
+
+        boolean running = false;
+        for (Robot robot: robots) {
+            if (robot.advanceTo(elapsedMillis)) {
+                running = true;
+            }
+        }
+
+        // The robots stay where their programs ended until the arena is started or stopped again
+        if (!running) {
+            tick.stop();
+            changeState(State.IDLE);
+        }
+    }
+
+    private void changeState(State state) {
+        this.state = state;
+        for (StateListener listener: stateListeners) {
+            listener.onStateChange(state);
+        }
+    }
+
+    private class Tick extends AnimationTimer {
+
+        private long lastNanos = -1;
+
+        private void restart() {
+            lastNanos = -1;
+            start();
+        }
+
+        @Override
+        public void handle(long now) {
+            double realMillis = lastNanos < 0 ? 0 : (now - lastNanos) / 1e6;
+            lastNanos = now;
+            advance(realMillis);
+        }
+
+    }
+
+    public interface StateListener {
+
+        void onStateChange(State newState);
+
+    }
+
+}
@@ -0,0 +1,111 @@
+package dev.lukasfink.robotprogrammer.components;
+
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.effect.ColorAdjust;
+import javafx.scene.image.Image;
+import javafx.scene.image.ImageView;
+import javafx.scene.paint.Color;
+
+import java.util.HashMap;
+import java.util.Objects;
+
+/**
+ * Images of the components, decoded once and shared by all instances. Block images are additionally kept pre-tinted
+ * for every state of their command, with and without hover, so blocks only swap images instead of running an effect.
+ *
+ * <p>Paths are resolved relative to this package, like the resources of the components themselves. Must be used from
+ * the FX thread.</p>
+ */
+public final class AssetCache {
+
+    private static final Color COLOR_COMPLETE = Color.rgb(0, 192, 15);
+    private static final Color COLOR_INCOMPLETE = Color.rgb(200, 150, 0);
+    private static final Color COLOR_WITHOUT_CONNECTIONS = Color.rgb(200, 80, 30);
+
+    private static final FlowCommand.State[] STATES = FlowCommand.State.values();
+
+    private static final HashMap<String, Image> images = new HashMap<>();
+
+    /**
+     * Tinted variants per image path, indexed by state ordinal * 2 + hover
+     */
+    private static final HashMap<String, Image[]> tintedImages = new HashMap<>();
+
+    /**
+     * Recoloured variants per source image and colour
+     */
+    private static final HashMap<Image, HashMap<Color, Image>> recoloredImages = new HashMap<>();
+
+    private AssetCache() {
+    }
+
+    public static Image image(String path) {
+        return images.computeIfAbsent(path, p -> new Image(Objects.requireNonNull(AssetCache.class.getResourceAsStream(p))));
+    }
+
+    public static Image tintedImage(String path, FlowCommand.State state, boolean hovered) {
+        Image[] variants = tintedImages.computeIfAbsent(path, AssetCache::createTintedImages);
+
+        return variants[state.ordinal() * 2 + (hovered ? 1 : 0)];
+    }
+
+    /**
+     * The image with its hues shifted so that red parts get the hue of the given colour, e.g. to tell robots apart.
+     */
+    public static Image recoloredImage(Image image, Color color) {
+        return recoloredImages.computeIfAbsent(image, i -> new HashMap<>()).computeIfAbsent(color, c -> {
+            ColorAdjust colorAdjust = new ColorAdjust();
+            colorAdjust.setHue(map((c.getHue() + 180) % 360, 0, 360, -1, 1));
+
+            ImageView imageView = new ImageView(image);
+            imageView.setEffect(colorAdjust);
+
+            SnapshotParameters snapshotParameters = new SnapshotParameters();
+            snapshotParameters.setFill(Color.TRANSPARENT);
+
+            return imageView.snapshot(snapshotParameters, null);
+        });
+    }
+
+    private static Image[] createTintedImages(String path) {
+        ImageView imageView = new ImageView(image(path));
+
+        SnapshotParameters snapshotParameters = new SnapshotParameters();
+        snapshotParameters.setFill(Color.TRANSPARENT);
+
+        Image[] variants = new Image[STATES.length * 2];
+        for (FlowCommand.State state: STATES) {
+            for (int hover = 0; hover < 2; hover++) {
+                imageView.setEffect(tint(state, hover == 1));
+                variants[state.ordinal() * 2 + hover] = imageView.snapshot(snapshotParameters, null);
+            }
+        }
+
+        return variants;
+    }
+
+    private static ColorAdjust tint(FlowCommand.State state, boolean hovered) {
+        Color color = switch (state) {
+            case COMPLETE -> COLOR_COMPLETE;
+            case INCOMPLETE -> COLOR_INCOMPLETE;
+            default -> COLOR_WITHOUT_CONNECTIONS;
+        };
+
+        if (hovered) {
+            color = color.darker();
+        }
+
+        ColorAdjust colorAdjust = new ColorAdjust();
+        colorAdjust.setHue(map((color.getHue() + 180) % 360, 0, 360, -1, 1));
+        colorAdjust.setBrightness(map(color.getBrightness(), 0, 1, -1, 1));
+        colorAdjust.setSaturation(color.getSaturation());
+
+        return colorAdjust;
+    }
+
+    private static double map(double value, double start, double stop, double targetStart, double targetStop) {
+        return targetStart + (targetStop - targetStart) * ((value - start) / (stop - start));
+    }
+
+}
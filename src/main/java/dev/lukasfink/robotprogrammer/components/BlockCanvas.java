@@ -0,0 +1,314 @@
+package dev.lukasfink.robotprogrammer.components;
+
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+import dev.lukasfink.robotprogrammer.util.SpatialGrid;
+import javafx.application.Platform;
+import javafx.event.EventHandler;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.image.Image;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritableImage;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Draws code blocks on a single canvas instead of adding one node per block to the scene graph. The blocks stay the
+ * model: their layout position, state and hover flag decide what is drawn, and mouse events on the pane are hit-tested
+ * through the block index and handed to the handlers of the block under the pointer. Block positions are program
+ * coordinates, the view offset translates them onto the canvas.
+ *
+ * <p>Each instruction gets an atlas holding its block pre-tinted for every state, with and without hover. Changes only
+ * mark their region dirty; all dirty regions of a pulse are redrawn at once.</p>
+ */
+public class BlockCanvas extends Canvas {
+
+    private static final int CELL_WIDTH = (int) Math.ceil(CodeBlock.SIZE_WIDTH);
+    private static final int CELL_HEIGHT = (int) Math.ceil(CodeBlock.SIZE_HEIGHT);
+
+    private static final FlowCommand.State[] STATES = FlowCommand.State.values();
+
+    private final SpatialGrid<CodeBlock> blockIndex;
+
+    /**
+     * Drawing order of the blocks, later blocks are drawn on top
+     */
+    private final HashMap<CodeBlock, Long> blockOrder;
+    private long nextOrder;
+
+    private final EnumMap<RobotInstruction, Image> atlases;
+
+    private double viewOffsetX;
+    private double viewOffsetY;
+
+    private boolean dirty;
+    private boolean redrawScheduled;
+    private double dirtyMinX;
+    private double dirtyMinY;
+    private double dirtyMaxX;
+    private double dirtyMaxY;
+
+    private CodeBlock grabbedBlock;
+    private CodeBlock hoveredBlock;
+
+    public BlockCanvas(SpatialGrid<CodeBlock> blockIndex) {
+        this.blockIndex = blockIndex;
+
+        blockOrder = new HashMap<>();
+        atlases = new EnumMap<>(RobotInstruction.class);
+
+        // Events are picked up on the pane below, so the canvas must not swallow them
+        setMouseTransparent(true);
+
+        widthProperty().addListener(observable -> invalidateAll());
+        heightProperty().addListener(observable -> invalidateAll());
+    }
+
+    /**
+     * Adds a block on top of the others. The block must already be in the block index.
+     */
+    public void add(CodeBlock codeBlock) {
+        blockOrder.put(codeBlock, nextOrder++);
+        invalidate(codeBlock);
+    }
+
+    public void remove(CodeBlock codeBlock) {
+        if (blockOrder.remove(codeBlock) != null) {
+            invalidate(codeBlock);
+        }
+
+        if (grabbedBlock == codeBlock) {
+            grabbedBlock = null;
+        }
+
+        if (hoveredBlock == codeBlock) {
+            hoveredBlock = null;
+        }
+    }
+
+    public void clear() {
+        blockOrder.clear();
+        grabbedBlock = null;
+        hoveredBlock = null;
+        invalidateAll();
+    }
+
+    /**
+     * Tells the canvas which block is under the pointer, for blocks that were hovered without the canvas noticing,
+     * e.g. blocks created from a template.
+     */
+    public void setHoveredBlock(CodeBlock codeBlock) {
+        hoveredBlock = codeBlock;
+    }
+
+    /**
+     * Pans the drawing, the whole canvas is redrawn from the blocks in the new viewport.
+     */
+    public void setViewOffset(double x, double y) {
+        viewOffsetX = x;
+        viewOffsetY = y;
+        invalidateAll();
+    }
+
+    public void invalidate(CodeBlock codeBlock) {
+        invalidate(codeBlock.getLayoutX(), codeBlock.getLayoutY());
+    }
+
+    /**
+     * Marks the area of a block at the given program position as dirty, e.g. the place a block was moved away from.
+     */
+    public void invalidate(double x, double y) {
+        double maxX = x + CodeBlock.SIZE_WIDTH;
+        double maxY = y + CodeBlock.SIZE_HEIGHT;
+        if (dirty) {
+            dirtyMinX = Math.min(dirtyMinX, x);
+            dirtyMinY = Math.min(dirtyMinY, y);
+            dirtyMaxX = Math.max(dirtyMaxX, maxX);
+            dirtyMaxY = Math.max(dirtyMaxY, maxY);
+        } else {
+            dirtyMinX = x;
+            dirtyMinY = y;
+            dirtyMaxX = maxX;
+            dirtyMaxY = maxY;
+            dirty = true;
+        }
+
+        scheduleRedraw();
+    }
+
+    public void invalidateAll() {
+        dirtyMinX = -viewOffsetX;
+        dirtyMinY = -viewOffsetY;
+        dirtyMaxX = getWidth() - viewOffsetX;
+        dirtyMaxY = getHeight() - viewOffsetY;
+        dirty = true;
+
+        scheduleRedraw();
+    }
+
+    /**
+     * Hands the mouse events reaching the pane itself to the blocks drawn below the pointer. Press, drag and release go
+     * to the block the press hit, like the implicit grab of scene graph nodes.
+     */
+    public void routeEvents(Pane pane) {
+        pane.addEventHandler(MouseEvent.MOUSE_PRESSED, event -> {
+            if (event.getTarget() != pane) {
+                return;
+            }
+
+            grabbedBlock = blockAt(event.getX() - viewOffsetX, event.getY() - viewOffsetY);
+            dispatch(grabbedBlock, grabbedBlock != null ? grabbedBlock.getOnMousePressed() : null, event);
+        });
+
+        pane.addEventHandler(MouseEvent.MOUSE_DRAGGED, event -> {
+            if (grabbedBlock != null) {
+                dispatch(grabbedBlock, grabbedBlock.getOnMouseDragged(), event);
+            }
+        });
+
+        pane.addEventHandler(MouseEvent.MOUSE_RELEASED, event -> {
+            if (grabbedBlock != null) {
+                CodeBlock releasedBlock = grabbedBlock;
+                grabbedBlock = null;
+                dispatch(releasedBlock, releasedBlock.getOnMouseReleased(), event);
+                if (blockOrder.containsKey(releasedBlock)) {
+                    hoveredBlock = releasedBlock;
+                }
+            }
+        });
+
+        pane.addEventHandler(MouseEvent.MOUSE_MOVED, event -> {
+            CodeBlock blockUnderPointer = event.getTarget() == pane ? blockAt(event.getX() - viewOffsetX, event.getY() - viewOffsetY) : null;
+            if (blockUnderPointer == hoveredBlock) {
+                return;
+            }
+
+            if (hoveredBlock != null) {
+                dispatch(hoveredBlock, hoveredBlock.getOnMouseExited(), event);
+            }
+
+            hoveredBlock = blockUnderPointer;
+            if (hoveredBlock != null) {
+                dispatch(hoveredBlock, hoveredBlock.getOnMouseEntered(), event);
+            }
+        });
+    }
+
+    private void dispatch(CodeBlock codeBlock, EventHandler<? super MouseEvent> handler, MouseEvent event) {
+        if (handler != null) {
+            handler.handle(event);
+        }
+
+        if (blockOrder.containsKey(codeBlock)) {
+            invalidate(codeBlock);
+        }
+    }
+
+    /**
+     * The topmost block containing the point in program coordinates, or null
+     */
+    private CodeBlock blockAt(double x, double y) {
+        CodeBlock topmostBlock = null;
+        long topmostOrder = -1;
+        for (CodeBlock codeBlock: blockIndex.query(x, y, 0, 0)) {
+            Long order = blockOrder.get(codeBlock);
+            if (order != null && order > topmostOrder) {
+                topmostBlock = codeBlock;
+                topmostOrder = order;
+            }
+        }
+
+        return topmostBlock;
+    }
+
+    private void scheduleRedraw() {
+        if (!redrawScheduled) {
+            redrawScheduled = true;
+            Platform.runLater(this::redraw);
+        }
+    }
+
+    private void redraw() {
+        redrawScheduled = false;
+        if (!dirty) {
+            return;
+        }
+
+        // Round outwards, so anti-aliased block edges are cleared as well
+        double minX = Math.floor(dirtyMinX) - 1;
+        double minY = Math.floor(dirtyMinY) - 1;
+        double width = Math.ceil(dirtyMaxX) + 1 - minX;
+        double height = Math.ceil(dirtyMaxY) + 1 - minY;
+        dirty = false;
+
+        GraphicsContext gc = getGraphicsContext2D();
+        gc.save();
+        gc.translate(viewOffsetX, viewOffsetY);
+        gc.beginPath();
+        gc.rect(minX, minY, width, height);
+        gc.clip();
+        gc.clearRect(minX, minY, width, height);
+
+        List<CodeBlock> blocks = blockIndex.query(minX, minY, width, height);
+        blocks.removeIf(codeBlock -> !blockOrder.containsKey(codeBlock));
+        blocks.sort(Comparator.comparingLong(blockOrder::get));
+        for (CodeBlock codeBlock: blocks) {
+            FlowCommand flowCommand = codeBlock.getFlowCommand();
+            Image atlas = atlases.computeIfAbsent(flowCommand.getInstruction(), instruction -> createAtlas(codeBlock.getImgPath(), instruction));
+            gc.drawImage(
+                    atlas,
+                    codeBlock.isHovered() ? CELL_WIDTH : 0,
+                    flowCommand.getState().ordinal() * CELL_HEIGHT,
+                    CodeBlock.SIZE_WIDTH,
+                    CodeBlock.SIZE_HEIGHT,
+                    codeBlock.getLayoutX(),
+                    codeBlock.getLayoutY(),
+                    CodeBlock.SIZE_WIDTH,
+                    CodeBlock.SIZE_HEIGHT
+            );
+        }
+
+        gc.restore();
+    }
+
+    /**
+     * Renders a block of the instruction once per state (rows) and hover flag (columns) into one image.
+     */
+    private static Image createAtlas(String imgPath, RobotInstruction instruction) {
+        WritableImage atlas = new WritableImage(2 * CELL_WIDTH, STATES.length * CELL_HEIGHT);
+        PixelWriter pixelWriter = atlas.getPixelWriter();
+
+        SnapshotParameters snapshotParameters = new SnapshotParameters();
+        snapshotParameters.setFill(Color.TRANSPARENT);
+
+        FlowCommand flowCommand = new FlowCommand(instruction);
+        CodeBlock codeBlock = new CodeBlock(imgPath, flowCommand);
+        for (FlowCommand.State state: STATES) {
+            flowCommand.setState(state);
+            for (int column = 0; column < 2; column++) {
+                codeBlock.setHovered(column == 1);
+                WritableImage snapshot = codeBlock.snapshot(snapshotParameters, null);
+                pixelWriter.setPixels(
+                        column * CELL_WIDTH,
+                        state.ordinal() * CELL_HEIGHT,
+                        Math.min(CELL_WIDTH, (int) snapshot.getWidth()),
+                        Math.min(CELL_HEIGHT, (int) snapshot.getHeight()),
+                        snapshot.getPixelReader(),
+                        0,
+                        0
+                );
+            }
+        }
+
+        return atlas;
+    }
+
+}
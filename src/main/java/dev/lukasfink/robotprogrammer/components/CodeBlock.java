@@ -5,13 +5,8 @@ import dev.lukasfink.robotprogrammer.util.Translator;
 import javafx.geometry.Point2D;
 import javafx.geometry.Pos;
 import javafx.scene.control.Label;
-import javafx.scene.effect.ColorAdjust;
-import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.StackPane;
-import javafx.scene.paint.Color;
-
-import java.util.Objects;
 
 public class CodeBlock extends StackPane {
 
@@ -19,10 +14,6 @@ public class CodeBlock extends StackPane {
     public static final double SIZE_HEIGHT = 64.875;
     public static final double SPACING = -10;
 
-    private static final Color COLOR_COMPLETE = Color.rgb(0, 192, 15);
-    private static final Color COLOR_INCOMPLETE = Color.rgb(200, 150, 0);
-    private static final Color COLOR_WITHOUT_CONNECTIONS = Color.rgb(200, 80, 30);
-
     private final FlowCommand flowCommand;
 
     private final ImageView imageView;
@@ -38,8 +29,7 @@ public class CodeBlock extends StackPane {
         this.imgPath = imgPath;
         this.flowCommand = flowCommand;
 
-        Image image = new Image(Objects.requireNonNull(getClass().getResourceAsStream(imgPath)));
-        imageView = new ImageView(image);
+        imageView = new ImageView();
         imageView.setLayoutX(0);
         imageView.setLayoutY(0);
         imageView.setPreserveRatio(false);
@@ -66,27 +56,17 @@ public class CodeBlock extends StackPane {
     }
 
     public void updateLook() {
-        Color newColor = switch (flowCommand.getState()) {
-            case COMPLETE -> COLOR_COMPLETE;
-            case INCOMPLETE -> COLOR_INCOMPLETE;
-            default -> COLOR_WITHOUT_CONNECTIONS;
-        };
-
-        if (hovered) {
-            newColor = newColor.darker();
-        }
-
-        ColorAdjust colorAdjust = new ColorAdjust();
-        colorAdjust.setHue(map((newColor.getHue() + 180) % 360, 0, 360, -1, 1));
-        colorAdjust.setBrightness(map(newColor.getBrightness(), 0, 1, -1, 1));
-        colorAdjust.setSaturation(newColor.getSaturation());
-        imageView.setEffect(colorAdjust);
+        imageView.setImage(AssetCache.tintedImage(imgPath, flowCommand.getState(), hovered));
     }
 
     public FlowCommand getFlowCommand() {
         return flowCommand;
     }
 
+    public boolean isHovered() {
+        return hovered;
+    }
+
     public void setHovered(boolean hovered) {
         this.hovered = hovered;
 
@@ -117,8 +97,4 @@ public class CodeBlock extends StackPane {
         return dragDelta.getY();
     }
 
-    private static double map(double value, double start, double stop, double targetStart, double targetStop) {
-        return targetStart + (targetStop - targetStart) * ((value - start) / (stop - start));
-    }
-
 }
@@ -1,25 +1,25 @@
 package dev.lukasfink.robotprogrammer.components;
 
 import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
-import javafx.animation.*;
-import javafx.application.Platform;
-import javafx.event.ActionEvent;
-import javafx.event.EventHandler;
+import dev.lukasfink.robotprogrammer.flow.SimulationEngine;
+import dev.lukasfink.robotprogrammer.flow.SimulationState;
 import javafx.geometry.Point2D;
+import javafx.geometry.Rectangle2D;
 import javafx.scene.Group;
 import javafx.scene.image.Image;
 import javafx.scene.image.ImageView;
 import javafx.scene.media.AudioClip;
 import javafx.scene.paint.Color;
-import javafx.scene.shape.Rectangle;
-import javafx.util.Duration;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
 
+/**
+ * A simulated robot on the arena. The robot doesn't run any animations of its own, the arena tells it the simulation
+ * time and the robot shows the pose its simulation has at that time.
+ */
 public class Robot extends Group {
 
     private static final int ROBOT_IMAGE_WIDTH = 150;
@@ -31,391 +31,326 @@ public class Robot extends Group {
     private static final int ROBOT_TIRE_WIDTH = 64;
     private static final int ROBOT_TIRE_HEIGHT = 64;
 
-    private static final int TIRE_IMAGE_COUNT = 30;
-
-    private static Image[] tires;
-
-    private enum Direction {
-        UP,
-        DOWN,
-        LEFT,
-        RIGHT
-    }
-
-    public enum State {
-        IDLE,
-        RUNNING,
-        PAUSED
-    }
-
-    private final List<RobotStateListener> stateListeners;
-
-    private final Queue<RobotInstruction> commandQueue;
-
-    private Point2D robotPosition;
-
-    private Direction direction;
-
-    private Transition currentTransition;
-
-    private Point2D startPosition;
-
-    private State state;
-
-    private Image robotImage;
-    private Image robotBlinkingImage;
-
-    private ImageView background;
-
-    private ImageView tireFL;
-    private ImageView tireFR;
-    private ImageView tireRL;
-    private ImageView tireRR;
-
-    private Timeline timelineFL;
-    private Timeline timelineFR;
-    private Timeline timelineRL;
-    private Timeline timelineRR;
-
-    private double simulationScale;
-
-    private AudioClip simulationMelody;
-
-    public Robot(Image robotImage) {
-        if (tires == null) {
-            tires = new Image[TIRE_IMAGE_COUNT];
-            for (int i = 0; i < TIRE_IMAGE_COUNT; i++) {
-                String filePath = String.format("tire%02d.png", i);
-                tires[i] = new Image(Objects.requireNonNull(getClass().getResourceAsStream(filePath)));
-            }
+    /**
+     * The tire frames are laid out row by row in one sprite sheet
+     */
+    private static final String TIRE_SHEET = "tire_sheet.png";
+    private static final int TIRE_FRAME_SIZE = 128;
+    private static final int TIRE_SHEET_COLUMNS = 6;
+    private static final int TIRE_FRAME_COUNT = 30;
+    private static final double TIRE_FRAME_MILLIS = 10;
+
+    private static final Rectangle2D[] TIRE_FRAMES = new Rectangle2D[TIRE_FRAME_COUNT];
+    static {
+        for (int i = 0; i < TIRE_FRAME_COUNT; i++) {
+            TIRE_FRAMES[i] = new Rectangle2D((i % TIRE_SHEET_COLUMNS) * TIRE_FRAME_SIZE, (i / TIRE_SHEET_COLUMNS) * TIRE_FRAME_SIZE, TIRE_FRAME_SIZE, TIRE_FRAME_SIZE);
         }
+    }
 
-        this.robotImage = robotImage;
-        this.robotBlinkingImage = new Image(Objects.requireNonNull(getClass().getResourceAsStream("robot_blinking.png")));
-
-        robotPosition = new Point2D(0, 0);
-
-        background = new ImageView(robotImage);
+    /**
+     * Playback rates an audio clip supports, the melody is left out at other simulation rates
+     */
+    private static final double MIN_MELODY_RATE = 0.125;
+    private static final double MAX_MELODY_RATE = 8;
+
+    /**
+     * Shared by all robots, an audio clip can be played several times at once
+     */
+    private static AudioClip simulationMelody;
+
+    private static double melodyRate = 1d;
+
+    private SimulationEngine simulation;
+
+    /**
+     * Start position relative to the origin of the arena
+     */
+    private Point2D startOffset;
+
+    /**
+     * States the robot has reached or is heading to since it was reset, to trace its path
+     */
+    private final List<SimulationState> path;
+
+    private SimulationState previousState;
+    private SimulationState nextState;
+    private double shownMillis;
+    private boolean finished;
+
+    private final Image robotImage;
+    private final Image robotBlinkingImage;
+    private final Color traceColor;
+
+    private final ImageView background;
+
+    private final ImageView tireFL;
+    private final ImageView tireFR;
+    private final ImageView tireRL;
+    private final ImageView tireRR;
+
+    /**
+     * Frames per frame time the left and right tires advance, negative to turn backwards
+     */
+    private double leftTireRate;
+    private double rightTireRate;
+
+    private double leftTireFrame;
+    private double rightTireFrame;
+
+    /**
+     * @param color colour of the robot, or null for the colours of the image
+     */
+    public Robot(Image robotImage, Color color) {
+        Image blinkingImage = AssetCache.image("robot_blinking.png");
+        this.robotImage = color != null ? AssetCache.recoloredImage(robotImage, color) : robotImage;
+        this.robotBlinkingImage = color != null ? AssetCache.recoloredImage(blinkingImage, color) : blinkingImage;
+        traceColor = color != null ? color : Color.RED;
+
+        background = new ImageView(this.robotImage);
         background.setFitWidth(ROBOT_IMAGE_WIDTH);
         background.setFitHeight(ROBOT_IMAGE_HEIGHT);
         background.setTranslateX(ROBOT_GROUP_WIDTH / 2f - ROBOT_IMAGE_WIDTH / 2f);
         background.setTranslateY(ROBOT_GROUP_HEIGHT / 2f - ROBOT_IMAGE_HEIGHT / 2f);
 
         getChildren().add(background);
-        tireFL = new ImageView(tires[0]);
-        timelineFL = new Timeline();
-        addTire(tireFL, timelineFL, 6, 32);
-        tireFR = new ImageView(tires[0]);
-        timelineFR = new Timeline();
-        addTire(tireFR, timelineFR, ROBOT_GROUP_WIDTH - ROBOT_TIRE_WIDTH - 6, 32);
-        tireRL = new ImageView(tires[0]);
-        timelineRL = new Timeline();
-        addTire(tireRL, timelineRL, 6, ROBOT_GROUP_HEIGHT - ROBOT_TIRE_HEIGHT - 32);
-        tireRR = new ImageView(tires[0]);
-        timelineRR = new Timeline();
-        addTire(tireRR, timelineRR, ROBOT_GROUP_WIDTH - ROBOT_TIRE_WIDTH - 6, ROBOT_GROUP_HEIGHT - ROBOT_TIRE_HEIGHT - 32);
-
-        stateListeners = new LinkedList<>();
-        commandQueue = new ConcurrentLinkedQueue<>();
-        direction = Direction.UP;
-        state = State.IDLE;
-
-        simulationScale = 1d;
-
-        simulationMelody = new AudioClip(Objects.requireNonNull(getClass().getResource("robot_melody.mp3")).toString());
-    }
-
-    public void setSimulationScale(double scale, double centerX, double centerY) {
-        Animation.Status currentTransitionStatus = null;
-        if (currentTransition != null) {
-            currentTransitionStatus = currentTransition.getStatus();
-            if (currentTransition.getStatus() == Animation.Status.RUNNING) {
-                currentTransition.pause();
-            }
-        }
-
-        this.simulationScale = scale;
+        tireFL = addTire(6, 32);
+        tireFR = addTire(ROBOT_GROUP_WIDTH - ROBOT_TIRE_WIDTH - 6, 32);
+        tireRL = addTire(6, ROBOT_GROUP_HEIGHT - ROBOT_TIRE_HEIGHT - 32);
+        tireRR = addTire(ROBOT_GROUP_WIDTH - ROBOT_TIRE_WIDTH - 6, ROBOT_GROUP_HEIGHT - ROBOT_TIRE_HEIGHT - 32);
 
-        setScaleX(scale);
-        setScaleY(scale);
+        startOffset = new Point2D(0, 0);
+        path = new ArrayList<>();
+        finished = true;
 
-        if (currentTransition != null) {
-            currentTransition.setRate(scale);
-
-            if (currentTransitionStatus != null) {
-                if (currentTransitionStatus == Animation.Status.RUNNING) {
-                    currentTransition.play();
-                }
-            }
+        if (simulationMelody == null) {
+            simulationMelody = new AudioClip(Objects.requireNonNull(Robot.class.getResource("robot_melody.mp3")).toString());
         }
-    }
-
-    private void addTire(final ImageView tire, Timeline timeline, double x, double y) {
-        getChildren().add(tire);
 
-        timeline.setCycleCount(Timeline.INDEFINITE);
-        Duration frameTime = Duration.ZERO;
-        for (int i = 0; i < TIRE_IMAGE_COUNT; i++) {
-            int finalI = i;
-            timeline.getKeyFrames().add(new KeyFrame(frameTime, event -> tire.setImage(tires[finalI])));
-            frameTime = frameTime.add(Duration.millis(10));
-        }
+        resetPosition();
+    }
 
+    private ImageView addTire(double x, double y) {
+        ImageView tire = new ImageView(AssetCache.image(TIRE_SHEET));
+        tire.setViewport(TIRE_FRAMES[0]);
         tire.setFitWidth(ROBOT_TIRE_WIDTH);
         tire.setFitHeight(ROBOT_TIRE_HEIGHT);
+        tire.setSmooth(true);
 
         tire.setLayoutX(x);
         tire.setLayoutY(y);
+
+        getChildren().add(tire);
+
+        return tire;
     }
 
     public void setXPos(double x) {
-        // robotPosition = new Point2D(x, robotPosition.getY());
-
         setTranslateX(x - ROBOT_GROUP_WIDTH / 2f);
     }
 
     public void setYPos(double y) {
-        // robotPosition = new Point2D(robotPosition.getX(), y);
-
         setTranslateY(y - ROBOT_GROUP_HEIGHT / 2f);
     }
 
-    public boolean isRunning() {
-        return state == State.RUNNING;
+    /**
+     * Sets the simulation this robot renders. The robot only animates the states computed by the simulation.
+     */
+    public void setSimulation(SimulationEngine simulation) {
+        this.simulation = simulation;
     }
 
-    public boolean isPaused() {
-        return state == State.PAUSED;
+    public SimulationEngine getSimulation() {
+        return simulation;
     }
 
-    public boolean isIdle() {
-        return state == State.IDLE;
+    public void setStartOffset(double x, double y) {
+        startOffset = new Point2D(x, y);
     }
 
-    public void addStateListener(RobotStateListener listener) {
-        stateListeners.add(listener);
+    public Point2D getStartOffset() {
+        return startOffset;
     }
 
-    public void addCommand(RobotInstruction command) {
-        commandQueue.offer(command);
+    public List<SimulationState> getPath() {
+        return Collections.unmodifiableList(path);
     }
 
-    public void executeCommand(RobotInstruction command) {
-        if (command == null) {
-            changeState(State.IDLE);
-            startPosition = null;
-            return;
+    public Color getTraceColor() {
+        return traceColor;
+    }
+
+    /**
+     * Rewinds the simulation and puts the robot back on its start position.
+     */
+    public void reset() {
+        if (simulation != null) {
+            simulation.reset();
+            previousState = simulation.getState();
+        } else {
+            previousState = null;
         }
+        nextState = null;
+        path.clear();
+        if (previousState != null) {
+            path.add(previousState);
+        }
+        shownMillis = 0;
+        finished = simulation == null;
+
+        setTireRates(0, 0);
+        background.setImage(robotImage);
+        resetPosition();
+    }
 
-        switch (command) {
-            case FORWARD -> forward();
-            case BACKWARDS -> backwards();
-            case TURN_LEFT -> turnLeft();
-            case TURN_RIGHT -> turnRight();
-            case MELODY -> melody();
-            case BLINK -> blink();
+    /**
+     * Stops the sounds of the robots, e.g. when the arena is stopped or paused.
+     */
+    public static void silence() {
+        if (simulationMelody != null) {
+            simulationMelody.stop();
         }
     }
 
-    private void triggerNextCommand() {
-        timelineFL.pause();
-        timelineFR.pause();
-        timelineRL.pause();
-        timelineRR.pause();
-        executeCommand(commandQueue.poll());
+    /**
+     * Sets the rate the melody is played with, which should be the rate of the simulation.
+     */
+    public static void setMelodyRate(double rate) {
+        melodyRate = rate;
     }
 
-    private void changeState(State state) {
-        this.state = state;
-        for (RobotStateListener listener: stateListeners) {
-            listener.onStateChange(state);
+    /**
+     * Plays the melody again if the robot is in the middle of one, e.g. after the arena was paused. An audio clip
+     * can't be paused, so the melody starts from the beginning.
+     */
+    public void resumeSounds() {
+        if (!finished && nextState != null && nextState.getCommand().getInstruction() == RobotInstruction.MELODY) {
+            playMelody();
         }
     }
 
-    public void start() {
-        resetPosition();
-        changeState(State.RUNNING);
-        startPosition = new Point2D(getTranslateX() + ROBOT_GROUP_WIDTH / 2f, getTranslateY() + ROBOT_GROUP_HEIGHT / 2f);
-        triggerNextCommand();
+    public boolean isFinished() {
+        return finished;
     }
 
-    public void stop() {
-        timelineFL.pause();
-        timelineFR.pause();
-        timelineRL.pause();
-        timelineRR.pause();
-        currentTransition.stop();
-        currentTransition = null;
-        commandQueue.clear();
-        resetPosition();
-        startPosition = null;
-        changeState(State.IDLE);
-    }
+    /**
+     * Shows the robot as it is at the given simulation time, stepping the simulation as far as needed.
+     *
+     * @return false once the program of the robot has finished
+     */
+    public boolean advanceTo(double millis) {
+        if (finished) {
+            return false;
+        }
+
+        while (nextState == null || millis >= nextState.getElapsedMillis()) {
+            if (nextState != null) {
+                previousState = nextState;
+            }
+
+            if (!simulation.hasNext()) {
+                finished = true;
+                setTireRates(0, 0);
+                background.setImage(robotImage);
+                showPose(previousState, previousState, 1);
+                return false;
+            }
 
-    public void pause() {
-        if (currentTransition != null) {
-            timelineFL.pause();
-            timelineFR.pause();
-            timelineRL.pause();
-            timelineRR.pause();
-            currentTransition.pause();
-            changeState(State.PAUSED);
+            nextState = simulation.step();
+            path.add(nextState);
+            beginStep(nextState);
         }
-    }
 
-    public void resume() {
-        if (currentTransition != null) {
-            timelineFL.play();
-            timelineFR.play();
-            timelineRL.play();
-            timelineRR.play();
-            currentTransition.play();
-            changeState(State.RUNNING);
+        double duration = nextState.getElapsedMillis() - previousState.getElapsedMillis();
+        double progress = duration > 0 ? (millis - previousState.getElapsedMillis()) / duration : 1;
+        showPose(previousState, nextState, progress);
+
+        if (nextState.getEvent() == SimulationState.Event.BLINKED) {
+            long blinkPhase = (long) ((millis - previousState.getElapsedMillis()) / SimulationEngine.BLINK_INTERVAL);
+            background.setImage(blinkPhase % 2 == 0 ? robotBlinkingImage : robotImage);
         }
-    }
 
-    public void resetPosition() {
-        direction = Direction.UP;
-        setRotate(0);
+        advanceTires(millis - shownMillis);
+        shownMillis = millis;
 
-        if (startPosition == null) {
+        return true;
+    }
+
+    /**
+     * Runs the rest of the program at once, without sounds, and shows the final pose.
+     */
+    public void finish() {
+        if (finished) {
             return;
         }
 
-        setXPos(startPosition.getX());
-        setYPos(startPosition.getY());
+        while (simulation.hasNext()) {
+            path.add(simulation.step());
+        }
+        previousState = simulation.getState();
+        nextState = null;
+        finished = true;
+
+        setTireRates(0, 0);
+        background.setImage(robotImage);
+        showPose(previousState, previousState, 1);
     }
 
-    private void forward() {
-        timelineFL.setRate(1);
-        timelineFL.play();
-        timelineFR.setRate(1);
-        timelineFR.play();
-        timelineRL.setRate(1);
-        timelineRL.play();
-        timelineRR.setRate(1);
-        timelineRR.play();
-        currentTransition = new TranslateTransition(Duration.millis(2000), this);
-        currentTransition.setInterpolator(Interpolator.LINEAR);
-        currentTransition.setRate(simulationScale);
-        switch (direction) {
-            case UP -> ((TranslateTransition) currentTransition).setByY(-100);
-            case DOWN -> ((TranslateTransition) currentTransition).setByY(100);
-            case LEFT -> ((TranslateTransition) currentTransition).setByX(-100);
-            case RIGHT -> ((TranslateTransition) currentTransition).setByX(100);
+    private void beginStep(SimulationState state) {
+        background.setImage(robotImage);
+        switch (state.getCommand().getInstruction()) {
+            case FORWARD -> setTireRates(1, 1);
+            case BACKWARDS -> setTireRates(-1, -1);
+            case TURN_LEFT -> setTireRates(-1, 1);
+            case TURN_RIGHT -> setTireRates(1, -1);
+            case MELODY -> {
+                setTireRates(0, 0);
+                playMelody();
+            }
+            default -> setTireRates(0, 0);
         }
-        currentTransition.setOnFinished(event -> triggerNextCommand());
-        currentTransition.play();
     }
 
-    private void backwards() {
-        timelineFL.setRate(-1);
-        timelineFL.play();
-        timelineFR.setRate(-1);
-        timelineFR.play();
-        timelineRL.setRate(-1);
-        timelineRL.play();
-        timelineRR.setRate(-1);
-        timelineRR.play();
-        currentTransition = new TranslateTransition(Duration.millis(2000), this);
-        currentTransition.setInterpolator(Interpolator.LINEAR);
-        currentTransition.setRate(simulationScale);
-        switch (direction) {
-            case UP -> ((TranslateTransition) currentTransition).setByY(100);
-            case DOWN -> ((TranslateTransition) currentTransition).setByY(-100);
-            case LEFT -> ((TranslateTransition) currentTransition).setByX(100);
-            case RIGHT -> ((TranslateTransition) currentTransition).setByX(-100);
+    private static void playMelody() {
+        if (melodyRate >= MIN_MELODY_RATE && melodyRate <= MAX_MELODY_RATE) {
+            simulationMelody.play(simulationMelody.getVolume(), simulationMelody.getBalance(), melodyRate,
+                    simulationMelody.getPan(), simulationMelody.getPriority());
         }
-        currentTransition.setOnFinished(event -> triggerNextCommand());
-        currentTransition.play();
     }
 
-    private void turnLeft() {
-        timelineFL.setRate(-1);
-        timelineFL.play();
-        timelineFR.setRate(1);
-        timelineFR.play();
-        timelineRL.setRate(-1);
-        timelineRL.play();
-        timelineRR.setRate(1);
-        timelineRR.play();
-        currentTransition = new RotateTransition(Duration.millis(2000), this);
-        currentTransition.setInterpolator(Interpolator.LINEAR);
-        ((RotateTransition) currentTransition).setByAngle(-90);
-        currentTransition.setOnFinished(event -> {
-            switch (direction) {
-                case UP -> direction = Direction.LEFT;
-                case LEFT -> direction = Direction.DOWN;
-                case DOWN -> direction = Direction.RIGHT;
-                case RIGHT -> direction = Direction.UP;
-            }
-            triggerNextCommand();
-        });
-        currentTransition.play();
-    }
+    private void showPose(SimulationState from, SimulationState to, double progress) {
+        setXPos(startOffset.getX() + from.getX() + (to.getX() - from.getX()) * progress);
+        setYPos(startOffset.getY() + from.getY() + (to.getY() - from.getY()) * progress);
 
-    private void turnRight() {
-        timelineFL.setRate(1);
-        timelineFL.play();
-        timelineFR.setRate(-1);
-        timelineFR.play();
-        timelineRL.setRate(1);
-        timelineRL.play();
-        timelineRR.setRate(-1);
-        timelineRR.play();
-        currentTransition = new RotateTransition(Duration.millis(2000), this);
-        currentTransition.setInterpolator(Interpolator.LINEAR);
-        ((RotateTransition) currentTransition).setByAngle(90);
-        currentTransition.setOnFinished(event -> {
-            switch (direction) {
-                case UP -> direction = Direction.RIGHT;
-                case RIGHT -> direction = Direction.DOWN;
-                case DOWN -> direction = Direction.LEFT;
-                case LEFT -> direction = Direction.UP;
-            }
-            triggerNextCommand();
-        });
-        currentTransition.play();
+        int angleDifference = Math.floorMod(to.getHeading().getAngle() - from.getHeading().getAngle() + 180, 360) - 180;
+        setRotate(from.getHeading().getAngle() + angleDifference * progress);
     }
 
-    private void melody() {
-        simulationMelody.play();
-        new Thread(() -> {
-            try {
-                Thread.sleep(4000);
-                Platform.runLater(this::triggerNextCommand);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).start();
+    private void resetPosition() {
+        setRotate(0);
+        setXPos(startOffset.getX());
+        setYPos(startOffset.getY());
     }
 
-    private void blink() {
-        new Thread(() -> {
-            try {
-                Platform.runLater(() -> background.setImage(robotBlinkingImage));
-                Thread.sleep(500);
-                Platform.runLater(() -> background.setImage(robotImage));
-                Thread.sleep(500);
-                Platform.runLater(() -> background.setImage(robotBlinkingImage));
-                Thread.sleep(500);
-                Platform.runLater(() -> background.setImage(robotImage));
-                Thread.sleep(500);
-                Platform.runLater(() -> background.setImage(robotBlinkingImage));
-                Thread.sleep(500);
-                Platform.runLater(() -> background.setImage(robotImage));
-                Thread.sleep(500);
-                Platform.runLater(this::triggerNextCommand);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        }).start();
+    private void setTireRates(double leftRate, double rightRate) {
+        leftTireRate = leftRate;
+        rightTireRate = rightRate;
     }
 
-    public interface RobotStateListener {
+    private void advanceTires(double elapsedMillis) {
+        if (leftTireRate == 0 && rightTireRate == 0) {
+            return;
+        }
 
-        void onStateChange(State newState);
+        double frames = elapsedMillis / TIRE_FRAME_MILLIS;
+        leftTireFrame = (leftTireFrame + frames * leftTireRate) % TIRE_FRAME_COUNT;
+        rightTireFrame = (rightTireFrame + frames * rightTireRate) % TIRE_FRAME_COUNT;
 
+        Rectangle2D leftFrame = TIRE_FRAMES[Math.floorMod((int) Math.floor(leftTireFrame), TIRE_FRAME_COUNT)];
+        Rectangle2D rightFrame = TIRE_FRAMES[Math.floorMod((int) Math.floor(rightTireFrame), TIRE_FRAME_COUNT)];
+        tireFL.setViewport(leftFrame);
+        tireRL.setViewport(leftFrame);
+        tireFR.setViewport(rightFrame);
+        tireRR.setViewport(rightFrame);
     }
 
 }
@@ -0,0 +1,86 @@
+package dev.lukasfink.robotprogrammer.components;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.util.Translator;
+import javafx.scene.control.TextArea;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shows the source code of a flow in a text area, one line per command. On update only the lines between the
+ * unchanged beginning and the unchanged end of the chain are replaced, so the text area doesn't reflow everything.
+ */
+public class SourceCodeView {
+
+    private final TextArea textArea;
+
+    private final Flow flow;
+
+    private List<FlowCommand> commands;
+    private List<String> lines;
+
+    public SourceCodeView(TextArea textArea, Flow flow) {
+        this.textArea = textArea;
+        this.flow = flow;
+
+        commands = new ArrayList<>();
+        lines = new ArrayList<>();
+
+        textArea.setEditable(false);
+        textArea.clear();
+        update();
+    }
+
+    public void update() {
+        List<FlowCommand> newCommands = new ArrayList<>(commands.size() + 1);
+        FlowCommand currentCommand = flow.getStartCommand();
+        newCommands.add(currentCommand);
+        while (currentCommand.hasNext()) {
+            currentCommand = currentCommand.getNext();
+            newCommands.add(currentCommand);
+        }
+
+        int commonLength = Math.min(commands.size(), newCommands.size());
+        int prefix = 0;
+        while (prefix < commonLength && commands.get(prefix) == newCommands.get(prefix)) {
+            prefix++;
+        }
+
+        int suffix = 0;
+        while (suffix < commonLength - prefix && commands.get(commands.size() - 1 - suffix) == newCommands.get(newCommands.size() - 1 - suffix)) {
+            suffix++;
+        }
+
+        if (prefix == commands.size() && prefix == newCommands.size()) {
+            return;
+        }
+
+        int start = 0;
+        for (int i = 0; i < prefix; i++) {
+            start += lines.get(i).length() + 1;
+        }
+
+        int end = start;
+        for (int i = prefix; i < commands.size() - suffix; i++) {
+            end += lines.get(i).length() + 1;
+        }
+
+        List<String> newLines = new ArrayList<>(newCommands.size());
+        newLines.addAll(lines.subList(0, prefix));
+        StringBuilder replacement = new StringBuilder();
+        for (int i = prefix; i < newCommands.size() - suffix; i++) {
+            String line = Translator.translate(newCommands.get(i).getInstructionText());
+            newLines.add(line);
+            replacement.append(line).append("\n");
+        }
+        newLines.addAll(lines.subList(lines.size() - suffix, lines.size()));
+
+        textArea.replaceText(start, end, replacement.toString());
+
+        commands = newCommands;
+        lines = newLines;
+    }
+
+}
@@ -2,25 +2,40 @@ package dev.lukasfink.robotprogrammer.flow;
 
 import dev.lukasfink.robotprogrammer.util.Translator;
 
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
 
 public class Flow {
 
-    private final List<FlowCommand> commands;
+    private static final int START_COMMAND_ID = 0;
+
+    private final Set<FlowCommand> commands;
     private final FlowCommand startCommand;
 
+    private int nextId;
+
+    private final List<FlowStateListener> stateListeners;
+
     public Flow() {
-        commands = new LinkedList<>();
+        commands = new LinkedHashSet<>();
+        stateListeners = new LinkedList<>();
 
         startCommand = new FlowCommand(RobotInstruction.INIT);
+        startCommand.setId(START_COMMAND_ID);
         commands.add(startCommand);
+        nextId = START_COMMAND_ID + 1;
     }
 
     public FlowCommand getStartCommand() {
         return startCommand;
     }
 
+    public void addStateListener(FlowStateListener listener) {
+        stateListeners.add(listener);
+    }
+
     public boolean isComplete() {
         FlowCommand currentCommand = getStartCommand();
         while (currentCommand.hasNext()) {
@@ -38,6 +53,8 @@ public class Flow {
         commands.clear();
         commands.add(startCommand);
         startCommand.setNext(null);
+        startCommand.setId(START_COMMAND_ID);
+        nextId = START_COMMAND_ID + 1;
     }
 
     public int count() {
@@ -51,10 +68,34 @@ public class Flow {
         return counter;
     }
 
+    /**
+     * Adds a command and gives it an id unless it already has one. Ids stay the same as long as the command exists.
+     */
     public void addCommand(FlowCommand command) {
+        if (!command.hasId()) {
+            command.setId(nextId++);
+        }
+
         commands.add(command);
     }
 
+    /**
+     * Gives a command the id it had when the project was saved. New ids continue after the highest restored one. The
+     * start command always keeps id 0, so no other command may get it.
+     */
+    public void restoreId(FlowCommand command, int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Invalid command id " + id);
+        }
+
+        if (id == START_COMMAND_ID && command != startCommand) {
+            throw new IllegalArgumentException("Command id " + id + " is reserved for the start command");
+        }
+
+        command.setId(id);
+        nextId = Math.max(nextId, id + 1);
+    }
+
     public void removeCommand(FlowCommand command) {
         commands.remove(command);
     }
@@ -70,35 +111,84 @@ public class Flow {
         return Translator.translate(sourceCode.toString());
     }
 
+    /**
+     * Connects two commands and recomputes the states of the resulting chain only.
+     */
+    public void link(FlowCommand previous, FlowCommand next) {
+        previous.setNext(next);
+        next.setPrevious(previous);
+        updateChainStates(previous);
+    }
+
+    /**
+     * Disconnects two commands and recomputes the states of both resulting chains only.
+     */
+    public void unlink(FlowCommand previous, FlowCommand next) {
+        previous.setNext(null);
+        next.setPrevious(null);
+        updateChainStates(previous);
+        updateChainStates(next);
+    }
+
+    /**
+     * Recomputes the states of all commands. Every chain is visited exactly once, starting at its head.
+     */
     public void updateStates() {
         for (FlowCommand command: commands) {
-            FlowCommand currentCommand = command;
-            boolean connectsToStart = currentCommand == startCommand;
-            if (!connectsToStart) {
-                while (currentCommand.hasPrevious()) {
-                    currentCommand = currentCommand.getPrevious();
-                }
-
-                if (currentCommand == startCommand) {
-                    connectsToStart = true;
-                }
+            if (!command.hasPrevious()) {
+                updateChainStates(command);
             }
+        }
+    }
 
-            currentCommand = command;
-            while (currentCommand.hasNext()) {
-                currentCommand = currentCommand.getNext();
-            }
+    private void updateChainStates(FlowCommand member) {
+        // The walks stop when they come around to their origin again, so a cyclic chain can't hang the editor
+        FlowCommand head = member;
+        while (head.hasPrevious() && head.getPrevious() != member) {
+            head = head.getPrevious();
+        }
+
+        FlowCommand tail = head;
+        while (tail.hasNext() && tail.getNext() != head) {
+            tail = tail.getNext();
+        }
 
-            boolean connectsToEnd = currentCommand.getInstruction() == RobotInstruction.TERMINATE;
+        boolean connectsToStart = head == startCommand;
+        boolean connectsToEnd = tail.getInstruction() == RobotInstruction.TERMINATE;
 
-            if (connectsToStart && connectsToEnd && command.isComplete()) {
-                command.setState(FlowCommand.State.COMPLETE);
+        FlowCommand currentCommand = head;
+        while (true) {
+            if (connectsToStart && connectsToEnd && currentCommand.isComplete()) {
+                changeState(currentCommand, FlowCommand.State.COMPLETE);
             } else if (connectsToStart) {
-                command.setState(FlowCommand.State.INCOMPLETE);
+                changeState(currentCommand, FlowCommand.State.INCOMPLETE);
             } else {
-                command.setState(FlowCommand.State.WITHOUT_CONNECTIONS);
+                changeState(currentCommand, FlowCommand.State.WITHOUT_CONNECTIONS);
             }
+
+            if (currentCommand == tail) {
+                break;
+            }
+
+            currentCommand = currentCommand.getNext();
         }
     }
 
+    private void changeState(FlowCommand command, FlowCommand.State state) {
+        if (command.getState() == state) {
+            return;
+        }
+
+        command.setState(state);
+        for (FlowStateListener listener: stateListeners) {
+            listener.onStateChange(command);
+        }
+    }
+
+    public interface FlowStateListener {
+
+        void onStateChange(FlowCommand command);
+
+    }
+
 }
@@ -8,8 +8,12 @@ public class FlowCommand {
         WITHOUT_CONNECTIONS
     }
 
+    private static final int NO_ID = -1;
+
     private final RobotInstruction instruction;
 
+    private int id = NO_ID;
+
     private FlowCommand previous;
     private FlowCommand next;
     private State state = State.WITHOUT_CONNECTIONS;
@@ -18,6 +22,21 @@ public class FlowCommand {
         this.instruction = instruction;
     }
 
+    /**
+     * The id of this command within its flow, assigned when the command is added to the flow
+     */
+    public int getId() {
+        return id;
+    }
+
+    public boolean hasId() {
+        return id != NO_ID;
+    }
+
+    void setId(int id) {
+        this.id = id;
+    }
+
     public RobotInstruction getInstruction() {
         return instruction;
     }
@@ -0,0 +1,53 @@
+package dev.lukasfink.robotprogrammer.flow;
+
+/**
+ * Enum for the directions the robot can face. UP points towards negative y, like on the screen.
+ */
+public enum Heading {
+
+    UP(0, -1, 0),
+    RIGHT(1, 0, 90),
+    DOWN(0, 1, 180),
+    LEFT(-1, 0, 270);
+
+    private final int deltaX;
+    private final int deltaY;
+    private final int angle;
+
+    Heading(int deltaX, int deltaY, int angle) {
+        this.deltaX = deltaX;
+        this.deltaY = deltaY;
+        this.angle = angle;
+    }
+
+    public int getDeltaX() {
+        return deltaX;
+    }
+
+    public int getDeltaY() {
+        return deltaY;
+    }
+
+    public int getAngle() {
+        return angle;
+    }
+
+    public Heading turnLeft() {
+        return switch (this) {
+            case UP -> LEFT;
+            case LEFT -> DOWN;
+            case DOWN -> RIGHT;
+            case RIGHT -> UP;
+        };
+    }
+
+    public Heading turnRight() {
+        return switch (this) {
+            case UP -> RIGHT;
+            case RIGHT -> DOWN;
+            case DOWN -> LEFT;
+            case LEFT -> UP;
+        };
+    }
+
+}
@@ -0,0 +1,196 @@
+package dev.lukasfink.robotprogrammer.flow;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A maze is a track of yellow lanes the robot has to follow from the start position to the goal. Coordinates are
+ * relative to the start position, just like the ones of the simulation states.
+ *
+ * <p>The lanes are additionally kept as an occupancy grid with one cell per {@link #CELL_SIZE}, half a move of the
+ * robot, so a move is checked with three lookups no matter how many lanes the maze has.</p>
+ */
+public class Maze {
+
+    public static final int MAZE_COUNT = 3;
+
+    /**
+     * Distance between the points of the occupancy grid, the gap of the grid drawn below the simulation
+     */
+    public static final int CELL_SIZE = 50;
+
+    private static final Maze[] mazes = new Maze[MAZE_COUNT];
+
+    static {
+        List<Lane> lanes = new ArrayList<>();
+        lanes.add(new Lane(-10, -210, 20, 220));
+        lanes.add(new Lane(0, -210, 210, 20));
+        lanes.add(new Lane(190, -200, 20, 210));
+        lanes.add(new Lane(100, -10, 110, 20));
+        mazes[0] = new Maze(lanes, 100, 0);
+
+        lanes.add(new Lane(90, -10, 20, 210));
+        lanes.add(new Lane(-100, 190, 210, 20));
+        lanes.add(new Lane(-110, 100, 20, 110));
+        lanes.add(new Lane(-300, 90, 210, 20));
+        mazes[1] = new Maze(lanes, -300, 100);
+
+        lanes.add(new Lane(-310, -200, 20, 310));
+        lanes.add(new Lane(-310, -210, 110, 20));
+        lanes.add(new Lane(-210, -210, 20, 110));
+        lanes.add(new Lane(-210, -110, 110, 20));
+        lanes.add(new Lane(-110, -210, 20, 120));
+        mazes[2] = new Maze(lanes, -100, -200);
+    }
+
+    private final List<Lane> lanes;
+
+    private final double goalX;
+    private final double goalY;
+
+    /**
+     * Position of the first grid point, all points outside of the grid are off the lanes
+     */
+    private final int gridX;
+    private final int gridY;
+    private final int columns;
+    private final int rows;
+
+    /**
+     * Whether the grid point lies on a lane, row by row
+     */
+    private final boolean[] cells;
+
+    private Maze(List<Lane> lanes, double goalX, double goalY) {
+        this.lanes = Collections.unmodifiableList(new ArrayList<>(lanes));
+        this.goalX = goalX;
+        this.goalY = goalY;
+
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (Lane lane: lanes) {
+            minX = Math.min(minX, lane.getX());
+            minY = Math.min(minY, lane.getY());
+            maxX = Math.max(maxX, lane.getX() + lane.getWidth());
+            maxY = Math.max(maxY, lane.getY() + lane.getHeight());
+        }
+
+        gridX = (int) Math.floor(minX / CELL_SIZE) * CELL_SIZE;
+        gridY = (int) Math.floor(minY / CELL_SIZE) * CELL_SIZE;
+        columns = (int) Math.floor((maxX - gridX) / CELL_SIZE) + 1;
+        rows = (int) Math.floor((maxY - gridY) / CELL_SIZE) + 1;
+
+        cells = new boolean[columns * rows];
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                cells[row * columns + column] = isOnLane(gridX + column * CELL_SIZE, gridY + row * CELL_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Returns the maze with the given number, starting at 1, or null for number 0 which means no maze at all.
+     */
+    public static Maze byNumber(int number) {
+        if (number == 0) {
+            return null;
+        }
+
+        if (number < 0 || number > MAZE_COUNT) {
+            throw new IllegalArgumentException("Unknown maze: " + number);
+        }
+
+        return mazes[number - 1];
+    }
+
+    public List<Lane> getLanes() {
+        return lanes;
+    }
+
+    public double getGoalX() {
+        return goalX;
+    }
+
+    public double getGoalY() {
+        return goalY;
+    }
+
+    public boolean isOnLane(double x, double y) {
+        for (Lane lane: lanes) {
+            if (lane.contains(x, y)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Like {@link #isOnLane(double, double)}, but constant time for points of the grid.
+     */
+    public boolean isOpen(double x, double y) {
+        if (x % CELL_SIZE != 0 || y % CELL_SIZE != 0) {
+            return isOnLane(x, y);
+        }
+
+        int column = (int) ((x - gridX) / CELL_SIZE);
+        int row = (int) ((y - gridY) / CELL_SIZE);
+        if (column < 0 || column >= columns || row < 0 || row >= rows) {
+            return false;
+        }
+
+        return cells[row * columns + column];
+    }
+
+    /**
+     * Whether a straight move stays on the lanes. Lanes run between points of the move grid, so both ends and the
+     * middle of a move tell whether it does.
+     */
+    public boolean canMove(double fromX, double fromY, double toX, double toY) {
+        return isOpen(fromX, fromY) && isOpen((fromX + toX) / 2, (fromY + toY) / 2) && isOpen(toX, toY);
+    }
+
+    public boolean isGoal(double x, double y) {
+        return x == goalX && y == goalY;
+    }
+
+    public static class Lane {
+
+        private final double x;
+        private final double y;
+        private final double width;
+        private final double height;
+
+        public Lane(double x, double y, double width, double height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+
+        public double getX() {
+            return x;
+        }
+
+        public double getY() {
+            return y;
+        }
+
+        public double getWidth() {
+            return width;
+        }
+
+        public double getHeight() {
+            return height;
+        }
+
+        public boolean contains(double pointX, double pointY) {
+            return pointX >= x && pointX <= x + width && pointY >= y && pointY <= y + height;
+        }
+
+    }
+
+}
@@ -5,21 +5,23 @@ package dev.lukasfink.robotprogrammer.flow;
  */
 public enum RobotInstruction {
 
-    INIT("init", false, true),
-    FORWARD("forward", true, true),
-    BACKWARDS("backwards", true, true),
-    TURN_LEFT("turn_left", true, true),
-    TURN_RIGHT("turn_right", true, true),
-    TERMINATE("terminate", true, false),
-    MELODY("melody", true, true),
-    BLINK("blink", true, true);
+    INIT("init", 0x00, false, true),
+    FORWARD("forward", 0x01, true, true),
+    BACKWARDS("backwards", 0x02, true, true),
+    TURN_LEFT("turn_left", 0x03, true, true),
+    TURN_RIGHT("turn_right", 0x04, true, true),
+    TERMINATE("terminate", 0x07, true, false),
+    MELODY("melody", 0x05, true, true),
+    BLINK("blink", 0x06, true, true);
 
     private final String value;
+    private final byte opcode;
     private final boolean previousAllowed;
     private final boolean nextAllowed;
 
-    RobotInstruction(String value, boolean previousAllowed, boolean nextAllowed) {
+    RobotInstruction(String value, int opcode, boolean previousAllowed, boolean nextAllowed) {
         this.value = value;
+        this.opcode = (byte) opcode;
         this.previousAllowed = previousAllowed;
         this.nextAllowed = nextAllowed;
     }
@@ -28,6 +30,13 @@ public enum RobotInstruction {
         return value;
     }
 
+    /**
+     * The byte which represents this instruction on the wire, see robot.ino.
+     */
+    public byte getOpcode() {
+        return opcode;
+    }
+
     public boolean isPreviousAllowed() {
         return previousAllowed;
     }
@@ -50,4 +59,14 @@ public enum RobotInstruction {
         };
     }
 
+    public static RobotInstruction byOpcode(byte opcode) {
+        for (RobotInstruction instruction: values()) {
+            if (instruction.opcode == opcode) {
+                return instruction;
+            }
+        }
+
+        throw new RuntimeException("Unknown opcode: " + opcode);
+    }
+
 }
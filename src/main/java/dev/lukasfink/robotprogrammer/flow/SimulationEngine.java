@@ -0,0 +1,120 @@
+package dev.lukasfink.robotprogrammer.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Steps through the commands of a flow and computes the resulting robot states. It doesn't depend on any UI toolkit,
+ * so programs can be simulated without a display.
+ */
+public class SimulationEngine {
+
+    public static final double MOVE_DISTANCE = 100;
+
+    public static final long MOVE_DURATION = 2000;
+    public static final long TURN_DURATION = 2000;
+    public static final long MELODY_DURATION = 4000;
+    public static final long BLINK_INTERVAL = 500;
+    public static final int BLINK_COUNT = 3;
+
+    private final List<FlowCommand> program;
+
+    private final Maze maze;
+
+    private SimulationState state;
+    private int programIndex;
+
+    public SimulationEngine(Flow flow) {
+        this(flow, null);
+    }
+
+    public SimulationEngine(Flow flow, Maze maze) {
+        this.maze = maze;
+
+        program = new ArrayList<>();
+        FlowCommand currentCommand = flow.getStartCommand();
+        while (currentCommand.hasNext()) {
+            currentCommand = currentCommand.getNext();
+            switch (currentCommand.getInstruction()) {
+                case FORWARD, BACKWARDS, TURN_LEFT, TURN_RIGHT, MELODY, BLINK -> program.add(currentCommand);
+            }
+        }
+
+        reset();
+    }
+
+    public void reset() {
+        state = new SimulationState(0, 0, Heading.UP, 0, 0, null, SimulationState.Event.STARTED);
+        programIndex = 0;
+    }
+
+    public SimulationState getState() {
+        return state;
+    }
+
+    public boolean hasNext() {
+        return programIndex < program.size();
+    }
+
+    public SimulationState step() {
+        if (!hasNext()) {
+            throw new IllegalStateException("Simulation has already finished");
+        }
+
+        FlowCommand command = program.get(programIndex++);
+        SimulationState previousState = state;
+        Heading heading = state.getHeading();
+        int step = state.getStep() + 1;
+        long elapsedMillis = state.getElapsedMillis();
+
+        state = switch (command.getInstruction()) {
+            case FORWARD -> new SimulationState(
+                    state.getX() + heading.getDeltaX() * MOVE_DISTANCE,
+                    state.getY() + heading.getDeltaY() * MOVE_DISTANCE,
+                    heading, elapsedMillis + MOVE_DURATION, step, command, SimulationState.Event.MOVED
+            );
+            case BACKWARDS -> new SimulationState(
+                    state.getX() - heading.getDeltaX() * MOVE_DISTANCE,
+                    state.getY() - heading.getDeltaY() * MOVE_DISTANCE,
+                    heading, elapsedMillis + MOVE_DURATION, step, command, SimulationState.Event.MOVED
+            );
+            case TURN_LEFT -> new SimulationState(state.getX(), state.getY(), heading.turnLeft(), elapsedMillis + TURN_DURATION, step, command, SimulationState.Event.TURNED);
+            case TURN_RIGHT -> new SimulationState(state.getX(), state.getY(), heading.turnRight(), elapsedMillis + TURN_DURATION, step, command, SimulationState.Event.TURNED);
+            case MELODY -> new SimulationState(state.getX(), state.getY(), heading, elapsedMillis + MELODY_DURATION, step, command, SimulationState.Event.PLAYED_MELODY);
+            case BLINK -> new SimulationState(state.getX(), state.getY(), heading, elapsedMillis + 2 * BLINK_COUNT * BLINK_INTERVAL, step, command, SimulationState.Event.BLINKED);
+            default -> throw new IllegalStateException("Instruction can't be simulated: " + command.getInstruction());
+        };
+
+        if (state.getEvent() == SimulationState.Event.MOVED && leavesMaze(previousState, state)) {
+            state = new SimulationState(state.getX(), state.getY(), state.getHeading(), state.getElapsedMillis(), state.getStep(), state.getCommand(), state.getEvent(), true);
+        }
+
+        return state;
+    }
+
+    private boolean leavesMaze(SimulationState from, SimulationState to) {
+        if (maze == null) {
+            return false;
+        }
+
+        return !maze.canMove(from.getX(), from.getY(), to.getX(), to.getY());
+    }
+
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * Runs the remaining program and returns every state, starting with the current one.
+     */
+    public List<SimulationState> run() {
+        List<SimulationState> states = new ArrayList<>(program.size() - programIndex + 1);
+        states.add(state);
+        while (hasNext()) {
+            states.add(step());
+        }
+
+        return states;
+    }
+
+}
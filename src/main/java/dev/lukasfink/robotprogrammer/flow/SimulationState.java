@@ -0,0 +1,75 @@
+package dev.lukasfink.robotprogrammer.flow;
+
+/**
+ * Immutable snapshot of the simulated robot after a step. Positions are relative to the start position.
+ */
+public class SimulationState {
+
+    public enum Event {
+        STARTED,
+        MOVED,
+        TURNED,
+        PLAYED_MELODY,
+        BLINKED
+    }
+
+    private final double x;
+    private final double y;
+    private final Heading heading;
+    private final long elapsedMillis;
+    private final int step;
+    private final FlowCommand command;
+    private final Event event;
+    private final boolean collided;
+
+    public SimulationState(double x, double y, Heading heading, long elapsedMillis, int step, FlowCommand command, Event event) {
+        this(x, y, heading, elapsedMillis, step, command, event, false);
+    }
+
+    public SimulationState(double x, double y, Heading heading, long elapsedMillis, int step, FlowCommand command, Event event, boolean collided) {
+        this.x = x;
+        this.y = y;
+        this.heading = heading;
+        this.elapsedMillis = elapsedMillis;
+        this.step = step;
+        this.command = command;
+        this.event = event;
+        this.collided = collided;
+    }
+
+    public double getX() {
+        return x;
+    }
+
+    public double getY() {
+        return y;
+    }
+
+    public Heading getHeading() {
+        return heading;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public int getStep() {
+        return step;
+    }
+
+    public FlowCommand getCommand() {
+        return command;
+    }
+
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Whether the robot left the lanes of the maze during this step.
+     */
+    public boolean hasCollided() {
+        return collided;
+    }
+
+}
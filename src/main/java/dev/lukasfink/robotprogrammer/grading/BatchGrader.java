@@ -0,0 +1,145 @@
+package dev.lukasfink.robotprogrammer.grading;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.Maze;
+import dev.lukasfink.robotprogrammer.flow.SimulationEngine;
+import dev.lukasfink.robotprogrammer.flow.SimulationState;
+import dev.lukasfink.robotprogrammer.io.BinaryProjectFormat;
+import dev.lukasfink.robotprogrammer.io.IOHelper;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Simulates every .rbt and .rbtb file of a directory against a maze, without any UI. The programs are graded in parallel on a
+ * work stealing pool using all available cores.
+ */
+public class BatchGrader {
+
+    private final Maze maze;
+
+    public BatchGrader(Maze maze) {
+        this.maze = maze;
+    }
+
+    public List<GradingResult> gradeDirectory(Path directory) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(directory, "*.{rbt," + BinaryProjectFormat.FILE_EXTENSION + "}")) {
+            for (Path file: directoryStream) {
+                files.add(file);
+            }
+        }
+        files.sort(Comparator.comparing(Path::getFileName));
+
+        ExecutorService executor = Executors.newWorkStealingPool();
+        try {
+            List<Future<GradingResult>> futures = new ArrayList<>(files.size());
+            for (Path file: files) {
+                futures.add(executor.submit(() -> grade(file)));
+            }
+
+            List<GradingResult> results = new ArrayList<>(files.size());
+            for (Future<GradingResult> future: futures) {
+                try {
+                    results.add(future.get());
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public GradingResult grade(Path file) {
+        String fileName = file.getFileName().toString();
+        try {
+            Flow flow = IOHelper.readFlow(file);
+            if (!flow.isComplete()) {
+                return GradingResult.failed(fileName, "Programm ist unvollständig");
+            }
+
+            SimulationEngine simulation = new SimulationEngine(flow, maze);
+            int collisions = 0;
+            SimulationState firstCollision = null;
+            while (simulation.hasNext()) {
+                SimulationState state = simulation.step();
+                if (state.hasCollided()) {
+                    collisions++;
+                    if (firstCollision == null) {
+                        firstCollision = state;
+                    }
+                }
+            }
+
+            SimulationState finalState = simulation.getState();
+            boolean passed = collisions == 0 && (maze == null || maze.isGoal(finalState.getX(), finalState.getY()));
+
+            return new GradingResult(fileName, passed, collisions, finalState.getStep(), finalState.getElapsedMillis(), firstCollision);
+        } catch (IOException | RuntimeException e) {
+            return GradingResult.failed(fileName, e.getMessage());
+        }
+    }
+
+    /**
+     * Usage: --grade &lt;directory&gt; [maze number]
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 2) {
+            exitWithUsage(null);
+        }
+
+        Path directory = Path.of(args[0]);
+        if (!Files.isDirectory(directory)) {
+            exitWithUsage("Kein Verzeichnis: " + args[0]);
+        }
+
+        int mazeNumber = 0;
+        if (args.length > 1) {
+            try {
+                mazeNumber = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                mazeNumber = -1;
+            }
+
+            if (mazeNumber < 0 || mazeNumber > Maze.MAZE_COUNT) {
+                exitWithUsage("Unbekanntes Labyrinth: " + args[1]);
+            }
+        }
+
+        Maze maze = Maze.byNumber(mazeNumber);
+        long startedAt = System.nanoTime();
+        List<GradingResult> results = new BatchGrader(maze).gradeDirectory(directory);
+        long duration = (System.nanoTime() - startedAt) / 1_000_000;
+
+        int passed = 0;
+        for (GradingResult result: results) {
+            System.out.println(result);
+            if (result.isPassed()) {
+                passed++;
+            }
+        }
+
+        System.out.println(passed + " von " + results.size() + " Programmen bestanden (" + duration + " ms)");
+    }
+
+    private static void exitWithUsage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("Aufruf: robot --grade <Verzeichnis> [Labyrinth 0-" + Maze.MAZE_COUNT + "]");
+        System.exit(2);
+    }
+
+}
@@ -0,0 +1,82 @@
+package dev.lukasfink.robotprogrammer.grading;
+
+import dev.lukasfink.robotprogrammer.flow.SimulationState;
+import dev.lukasfink.robotprogrammer.util.Translator;
+
+/**
+ * Result of simulating a single program against a maze.
+ */
+public class GradingResult {
+
+    private final String fileName;
+    private final boolean passed;
+    private final int collisions;
+    private final int steps;
+    private final long simulatedMillis;
+    private final SimulationState firstCollision;
+    private final String error;
+
+    /**
+     * @param firstCollision state after the first step that left the lanes, or null
+     */
+    public GradingResult(String fileName, boolean passed, int collisions, int steps, long simulatedMillis, SimulationState firstCollision) {
+        this(fileName, passed, collisions, steps, simulatedMillis, firstCollision, null);
+    }
+
+    private GradingResult(String fileName, boolean passed, int collisions, int steps, long simulatedMillis, SimulationState firstCollision, String error) {
+        this.fileName = fileName;
+        this.passed = passed;
+        this.collisions = collisions;
+        this.steps = steps;
+        this.simulatedMillis = simulatedMillis;
+        this.firstCollision = firstCollision;
+        this.error = error;
+    }
+
+    public static GradingResult failed(String fileName, String error) {
+        return new GradingResult(fileName, false, 0, 0, 0, null, error);
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public boolean isPassed() {
+        return passed;
+    }
+
+    public int getCollisions() {
+        return collisions;
+    }
+
+    public int getSteps() {
+        return steps;
+    }
+
+    public long getSimulatedMillis() {
+        return simulatedMillis;
+    }
+
+    public SimulationState getFirstCollision() {
+        return firstCollision;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        if (error != null) {
+            return fileName + "\tFEHLER\t" + error;
+        }
+
+        String result = fileName + "\t" + (passed ? "BESTANDEN" : "NICHT BESTANDEN") + "\tKollisionen: " + collisions + "\tSchritte: " + steps + "\tDauer: " + (simulatedMillis / 1000) + " s";
+        if (firstCollision != null) {
+            result += "\tErste Kollision: Schritt " + firstCollision.getStep() + " (" + Translator.translate(firstCollision.getCommand().getInstructionText()) + ")";
+        }
+
+        return result;
+    }
+
+}
@@ -0,0 +1,196 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import dev.lukasfink.robotprogrammer.components.CodeBlock;
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary alternative to the JSON .rbt files. All numbers are big endian:
+ *
+ * <pre>
+ * header:       "RBTB" | version (2 bytes) | flags (2 bytes) | block count (4 bytes) | string table offset (4 bytes)
+ * block record: id (4 bytes) | next id or -1 (4 bytes) | x (8 bytes) | y (8 bytes) | opcode (1 byte) | 7 reserved bytes
+ * string table: count (2 bytes) | per entry: length (2 bytes) and UTF-8 bytes
+ * </pre>
+ *
+ * The records have a fixed width, so a block can be read without looking at the ones before it. The optional string
+ * table holds the instruction names indexed by opcode. If it is present, opcodes are resolved through the names, which
+ * keeps files readable even if opcodes are renumbered.
+ */
+public class BinaryProjectFormat {
+
+    public static final String FILE_EXTENSION = "rbtb";
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = "RBTB".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int FLAG_STRING_TABLE = 1;
+
+    private static final int HEADER_LENGTH = 16;
+    private static final int RECORD_LENGTH = 32;
+    private static final int RECORD_RESERVED_LENGTH = 7;
+
+    private static final int NO_NEXT = -1;
+
+    public static boolean isBinaryFile(Path file) {
+        return file.getFileName().toString().toLowerCase().endsWith("." + FILE_EXTENSION);
+    }
+
+    public static void write(Path file, HashMap<FlowCommand, CodeBlock> codeBlockMap) throws IOException {
+        List<ExportedCodeBlock> exportedCodeBlocks = new ArrayList<>(codeBlockMap.size());
+        for (CodeBlock codeBlock: codeBlockMap.values()) {
+            exportedCodeBlocks.add(ExportedCodeBlock.fromCodeBlock(codeBlock));
+        }
+
+        write(file, exportedCodeBlocks);
+    }
+
+    public static void write(Path file, List<ExportedCodeBlock> exportedCodeBlocks) throws IOException {
+        RobotInstruction[] instructions = RobotInstruction.values();
+        byte[][] names = new byte[instructions.length][];
+        int stringTableLength = 2;
+        for (RobotInstruction instruction: instructions) {
+            names[instruction.getOpcode()] = instruction.getValue().getBytes(StandardCharsets.UTF_8);
+            stringTableLength += 2 + names[instruction.getOpcode()].length;
+        }
+
+        int stringTableOffset = HEADER_LENGTH + exportedCodeBlocks.size() * RECORD_LENGTH;
+        ByteBuffer buffer = ByteBuffer.allocate(stringTableOffset + stringTableLength);
+        buffer.put(MAGIC);
+        buffer.putShort((short) VERSION);
+        buffer.putShort((short) FLAG_STRING_TABLE);
+        buffer.putInt(exportedCodeBlocks.size());
+        buffer.putInt(stringTableOffset);
+
+        for (ExportedCodeBlock exportedCodeBlock: exportedCodeBlocks) {
+            buffer.putInt(exportedCodeBlock.getId());
+            buffer.putInt(exportedCodeBlock.getNext() != null ? exportedCodeBlock.getNext() : NO_NEXT);
+            buffer.putDouble(exportedCodeBlock.getPosX());
+            buffer.putDouble(exportedCodeBlock.getPosY());
+            buffer.put((byte) RobotInstruction.byValue(exportedCodeBlock.getInstruction()).getOpcode());
+            buffer.position(buffer.position() + RECORD_RESERVED_LENGTH);
+        }
+
+        buffer.putShort((short) names.length);
+        for (byte[] name: names) {
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+        }
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Reads a binary project into a new flow without any UI.
+     */
+    public static Flow readFlow(Path file) throws IOException {
+        Flow flow = new Flow();
+        readFlow(file, flow, (exportedCodeBlock, flowCommand) -> {});
+
+        return flow;
+    }
+
+    /**
+     * Reads a binary project into the given, freshly reset flow, see IOHelper.readFlow.
+     */
+    public static void readFlow(Path file, Flow flow, BiConsumer<ExportedCodeBlock, FlowCommand> consumer) throws IOException {
+        FlowLoader loader = new FlowLoader(flow, consumer);
+        read(file, loader::add);
+        loader.link();
+    }
+
+    /**
+     * Hands the blocks of a binary project to the consumer in file order, without building a flow. The file is read
+     * into one buffer with a single pass and closed before the blocks are decoded. It isn't memory mapped, since a
+     * mapping stays open until it is garbage collected and Windows refuses to replace a mapped file, e.g. when the
+     * project is saved again.
+     */
+    public static void read(Path file, Consumer<ExportedCodeBlock> consumer) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_LENGTH || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Invalid file length: " + channel.size());
+            }
+
+            buffer = ByteBuffer.allocate((int) channel.size());
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("File got shorter while reading");
+                }
+            }
+            buffer.flip();
+        }
+
+        for (byte magicByte: MAGIC) {
+            if (buffer.get() != magicByte) {
+                throw new IOException("Not a binary project file");
+            }
+        }
+
+        int version = Short.toUnsignedInt(buffer.getShort());
+        if (version > VERSION) {
+            throw new IOException("Unsupported file format version " + version);
+        }
+
+        int flags = Short.toUnsignedInt(buffer.getShort());
+        int blockCount = buffer.getInt();
+        int stringTableOffset = buffer.getInt();
+        if (blockCount < 0 || HEADER_LENGTH + (long) blockCount * RECORD_LENGTH > stringTableOffset || stringTableOffset > buffer.limit()) {
+            throw new IOException("Invalid block count: " + blockCount);
+        }
+
+        RobotInstruction[] instructionsByOpcode = (flags & FLAG_STRING_TABLE) != 0 ? readStringTable(buffer, stringTableOffset) : null;
+
+        for (int i = 0; i < blockCount; i++) {
+            int offset = HEADER_LENGTH + i * RECORD_LENGTH;
+            int id = buffer.getInt(offset);
+            int next = buffer.getInt(offset + 4);
+            double x = buffer.getDouble(offset + 8);
+            double y = buffer.getDouble(offset + 16);
+            byte opcode = buffer.get(offset + 24);
+
+            RobotInstruction instruction;
+            if (instructionsByOpcode == null) {
+                instruction = RobotInstruction.byOpcode(opcode);
+            } else if (Byte.toUnsignedInt(opcode) < instructionsByOpcode.length) {
+                instruction = instructionsByOpcode[Byte.toUnsignedInt(opcode)];
+            } else {
+                throw new IOException("Unknown opcode: " + opcode);
+            }
+
+            consumer.accept(new ExportedCodeBlock(id, x, y, instruction.getValue(), next != NO_NEXT ? next : null));
+        }
+    }
+
+    private static RobotInstruction[] readStringTable(ByteBuffer buffer, int offset) {
+        buffer.position(offset);
+        RobotInstruction[] instructions = new RobotInstruction[Short.toUnsignedInt(buffer.getShort())];
+        for (int i = 0; i < instructions.length; i++) {
+            byte[] name = new byte[Short.toUnsignedInt(buffer.getShort())];
+            buffer.get(name);
+            instructions[i] = RobotInstruction.byValue(new String(name, StandardCharsets.UTF_8));
+        }
+
+        return instructions;
+    }
+
+}
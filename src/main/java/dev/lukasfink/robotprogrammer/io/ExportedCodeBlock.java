@@ -1,21 +1,43 @@
 package dev.lukasfink.robotprogrammer.io;
 
 import dev.lukasfink.robotprogrammer.components.CodeBlock;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
 
 public class ExportedCodeBlock {
 
+    protected int id;
+
     protected double posX;
 
     protected double posY;
 
     protected String instruction;
 
+    /**
+     * Id of the following block, null if the block has no successor or the file predates explicit links
+     */
+    protected Integer next;
+
     public ExportedCodeBlock(double posX, double posY, String instruction) {
         this.posX = posX;
         this.posY = posY;
         this.instruction = instruction;
     }
 
+    public ExportedCodeBlock(int id, double posX, double posY, String instruction, Integer next) {
+        this(posX, posY, instruction);
+        this.id = id;
+        this.next = next;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
     public double getPosX() {
         return posX;
     }
@@ -40,8 +62,24 @@ public class ExportedCodeBlock {
         this.instruction = instruction;
     }
 
+    public Integer getNext() {
+        return next;
+    }
+
+    public void setNext(Integer next) {
+        this.next = next;
+    }
+
     public static ExportedCodeBlock fromCodeBlock(CodeBlock codeBlock) {
-        return new ExportedCodeBlock(codeBlock.getLayoutX(), codeBlock.getLayoutY(), codeBlock.getFlowCommand().getInstruction().getValue());
+        FlowCommand flowCommand = codeBlock.getFlowCommand();
+
+        return new ExportedCodeBlock(
+                flowCommand.getId(),
+                codeBlock.getLayoutX(),
+                codeBlock.getLayoutY(),
+                flowCommand.getInstruction().getValue(),
+                flowCommand.hasNext() ? flowCommand.getNext().getId() : null
+        );
     }
 
 }
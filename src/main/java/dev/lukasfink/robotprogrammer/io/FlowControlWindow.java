@@ -0,0 +1,173 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.IntFunction;
+
+/**
+ * Keeps up to a fixed number of messages in flight. Every message gets a sequence number and is completed by the
+ * acknowledgement carrying that number, which yields its round trip time. Acknowledgements for messages which aren't in
+ * flight anymore, e.g. late ones for a retransmitted message, are ignored.
+ *
+ * <p>Retransmissions are go-back-N: if a message isn't acknowledged in time or the robot rejects a frame, all messages
+ * in flight are sent again in their original order, so the robot never receives them out of order.</p>
+ */
+public class FlowControlWindow implements AutoCloseable {
+
+    private final Transmitter transmitter;
+    private final Semaphore permits;
+    private final long timeoutMillis;
+    private final int maxRetries;
+
+    private final ScheduledExecutorService scheduler;
+    private final Deque<PendingMessage> pendingMessages;
+
+    private int nextSequence;
+
+    public FlowControlWindow(Transmitter transmitter, int windowSize, long timeoutMillis, int maxRetries) {
+        // A sequence number must not be reused while an earlier message with it could still be acknowledged
+        if (windowSize < 1 || windowSize >= RobotProtocol.SEQUENCE_COUNT / 2) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + (RobotProtocol.SEQUENCE_COUNT / 2 - 1));
+        }
+
+        this.transmitter = transmitter;
+        this.permits = new Semaphore(windowSize);
+        this.timeoutMillis = timeoutMillis;
+        this.maxRetries = maxRetries;
+
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "flow-control-timeouts");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pendingMessages = new ArrayDeque<>();
+    }
+
+    /**
+     * Sends a message as soon as the window has room for it. The encoder gets the sequence number of the message and
+     * has to put it into the message. The returned future completes with the round trip time of the acknowledged
+     * transmission, or exceptionally if all retransmissions went unanswered.
+     */
+    public CompletableFuture<Duration> send(IntFunction<byte[]> encoder) throws InterruptedException {
+        permits.acquire();
+        PendingMessage pendingMessage;
+        synchronized (this) {
+            int sequence = nextSequence;
+            nextSequence = (nextSequence + 1) % RobotProtocol.SEQUENCE_COUNT;
+            pendingMessage = new PendingMessage(sequence, encoder.apply(sequence));
+            pendingMessages.addLast(pendingMessage);
+            transmit(pendingMessage);
+        }
+
+        return pendingMessage.future;
+    }
+
+    public void acknowledge(int sequence) {
+        PendingMessage pendingMessage = null;
+        synchronized (this) {
+            for (PendingMessage candidate: pendingMessages) {
+                if (candidate.sequence == sequence) {
+                    pendingMessage = candidate;
+                    break;
+                }
+            }
+
+            if (pendingMessage == null) {
+                return;
+            }
+
+            pendingMessages.remove(pendingMessage);
+            pendingMessage.timeout.cancel(false);
+        }
+
+        permits.release();
+        pendingMessage.future.complete(Duration.ofNanos(System.nanoTime() - pendingMessage.sentAt));
+    }
+
+    /**
+     * Handles a negative acknowledgement by retransmitting all messages in flight.
+     */
+    public synchronized void reject() {
+        retransmitAll();
+    }
+
+    private synchronized void timeout(PendingMessage pendingMessage) {
+        if (pendingMessages.contains(pendingMessage)) {
+            retransmitAll();
+        }
+    }
+
+    private void retransmitAll() {
+        for (PendingMessage pendingMessage: new ArrayList<>(pendingMessages)) {
+            pendingMessage.timeout.cancel(false);
+            if (pendingMessage.attempts > maxRetries) {
+                fail(pendingMessage, new TimeoutException("No acknowledgement after " + pendingMessage.attempts + " attempts"));
+            } else {
+                transmit(pendingMessage);
+            }
+        }
+    }
+
+    private void transmit(PendingMessage pendingMessage) {
+        pendingMessage.attempts++;
+        pendingMessage.sentAt = System.nanoTime();
+        try {
+            transmitter.transmit(pendingMessage.message);
+        } catch (IOException e) {
+            fail(pendingMessage, e);
+            return;
+        }
+
+        pendingMessage.timeout = scheduler.schedule(() -> timeout(pendingMessage), timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void fail(PendingMessage pendingMessage, Exception exception) {
+        pendingMessages.remove(pendingMessage);
+        permits.release();
+        pendingMessage.future.completeExceptionally(exception);
+    }
+
+    @Override
+    public synchronized void close() {
+        scheduler.shutdownNow();
+        while (!pendingMessages.isEmpty()) {
+            fail(pendingMessages.peekFirst(), new CancellationException("Flow control window was closed"));
+        }
+    }
+
+    private static class PendingMessage {
+
+        private final int sequence;
+        private final byte[] message;
+        private final CompletableFuture<Duration> future;
+
+        private int attempts;
+        private long sentAt;
+        private ScheduledFuture<?> timeout;
+
+        private PendingMessage(int sequence, byte[] message) {
+            this.sequence = sequence;
+            this.message = message;
+            this.future = new CompletableFuture<>();
+        }
+
+    }
+
+    public interface Transmitter {
+
+        void transmit(byte[] message) throws IOException;
+
+    }
+
+}
@@ -0,0 +1,124 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import dev.lukasfink.robotprogrammer.components.CodeBlock;
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.BiConsumer;
+
+/**
+ * Turns the blocks of a saved project into the commands of a flow, independent of the file format they came from.
+ * Blocks are not kept once they are added: files with explicit links only leave the next id of every block behind,
+ * files without links only the positions the blocks are linked by.
+ */
+class FlowLoader {
+
+    private static final double CHAIN_STEP = CodeBlock.SIZE_HEIGHT + CodeBlock.SPACING;
+
+    private final Flow flow;
+    private final BiConsumer<ExportedCodeBlock, FlowCommand> consumer;
+
+    private final HashMap<Integer, FlowCommand> commandsById;
+    private final List<FlowCommand> commands;
+
+    /**
+     * Id of the following block per command, null if there is none
+     */
+    private final List<Integer> nextIds;
+
+    /**
+     * Position right below the block per command, where a following block would sit, only used when linking by
+     * position
+     */
+    private final List<Long> positionsBelow;
+    private final HashMap<Long, FlowCommand> commandsByPosition;
+
+    private boolean linkedByPosition;
+    private boolean startFound;
+
+    FlowLoader(Flow flow, BiConsumer<ExportedCodeBlock, FlowCommand> consumer) {
+        this.flow = flow;
+        this.consumer = consumer;
+
+        commandsById = new HashMap<>();
+        commands = new ArrayList<>();
+        nextIds = new ArrayList<>();
+        positionsBelow = new ArrayList<>();
+        commandsByPosition = new HashMap<>();
+    }
+
+    /**
+     * Links the commands through the positions of their blocks instead of their next ids, for files without links.
+     * Must be set before the first block is added.
+     */
+    void setLinkedByPosition(boolean linkedByPosition) {
+        if (!commands.isEmpty()) {
+            throw new IllegalStateException("Blocks have already been added");
+        }
+
+        this.linkedByPosition = linkedByPosition;
+    }
+
+    void add(ExportedCodeBlock exportedCodeBlock) {
+        RobotInstruction instruction = RobotInstruction.byValue(Objects.requireNonNull(exportedCodeBlock.getInstruction()));
+        if (commandsById.containsKey(exportedCodeBlock.getId())) {
+            throw new RuntimeException("Duplicate block id: " + exportedCodeBlock.getId());
+        }
+
+        FlowCommand command;
+        if (instruction == RobotInstruction.INIT && !startFound) {
+            // The start command keeps id 0, the id of its block is only needed to resolve links
+            command = flow.getStartCommand();
+            startFound = true;
+        } else {
+            command = new FlowCommand(instruction);
+            flow.restoreId(command, exportedCodeBlock.getId());
+        }
+
+        flow.addCommand(command);
+
+        commandsById.put(exportedCodeBlock.getId(), command);
+        commands.add(command);
+        if (linkedByPosition) {
+            positionsBelow.add(positionKey(exportedCodeBlock.getPosX(), exportedCodeBlock.getPosY() + CHAIN_STEP));
+            commandsByPosition.put(positionKey(exportedCodeBlock.getPosX(), exportedCodeBlock.getPosY()), command);
+        } else {
+            nextIds.add(exportedCodeBlock.getNext());
+        }
+
+        consumer.accept(exportedCodeBlock, command);
+    }
+
+    /**
+     * Links the added commands, either through their next ids or, for files without links, through the positions of
+     * their blocks.
+     */
+    void link() {
+        for (int i = 0; i < commands.size(); i++) {
+            FlowCommand command = commands.get(i);
+            FlowCommand next;
+            if (linkedByPosition) {
+                next = commandsByPosition.get(positionsBelow.get(i));
+            } else {
+                next = nextIds.get(i) != null ? commandsById.get(nextIds.get(i)) : null;
+            }
+
+            if (next != null && next != command && command.getInstruction().isNextAllowed() && next.getInstruction().isPreviousAllowed() && !next.hasPrevious()) {
+                command.setNext(next);
+                next.setPrevious(command);
+            }
+        }
+
+        flow.updateStates();
+    }
+
+    private static long positionKey(double x, double y) {
+        return (Math.round(x) << 32) ^ (Math.round(y) & 0xffffffffL);
+    }
+
+}
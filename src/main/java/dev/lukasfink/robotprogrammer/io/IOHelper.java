@@ -1,29 +1,239 @@
 package dev.lukasfink.robotprogrammer.io;
 
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 import dev.lukasfink.robotprogrammer.components.CodeBlock;
+import dev.lukasfink.robotprogrammer.flow.Flow;
 import dev.lukasfink.robotprogrammer.flow.FlowCommand;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 
 public class IOHelper {
 
-    public static String translateToJson(HashMap<FlowCommand, CodeBlock> codeBlockMap) {
-        ExportedCodeBlock[] exportedCodeBlocks = new ExportedCodeBlock[codeBlockMap.values().size()];
-        int i = 0;
+    /**
+     * Version of the written .rbt format. Version 1 files are a bare array of blocks without ids or links, version 2
+     * files are an object holding the version and the blocks with their ids and links.
+     */
+    public static final int FORMAT_VERSION = 2;
+
+    private static final int LEGACY_FORMAT_VERSION = 1;
+
+    /**
+     * Gson instances are immutable and thread-safe, so all readers and writers share one
+     */
+    private static final Gson GSON = new Gson();
+
+    /**
+     * Writes the code blocks block by block to the given writer. The writer is neither buffered nor closed here.
+     */
+    public static void writeJson(Writer writer, HashMap<FlowCommand, CodeBlock> codeBlockMap) throws IOException {
+        JsonWriter jsonWriter = beginDocument(writer);
         for (CodeBlock codeBlock: codeBlockMap.values()) {
-            exportedCodeBlocks[i++] = ExportedCodeBlock.fromCodeBlock(codeBlock);
+            GSON.toJson(ExportedCodeBlock.fromCodeBlock(codeBlock), ExportedCodeBlock.class, jsonWriter);
+        }
+        endDocument(jsonWriter);
+    }
+
+    public static void writeJson(Writer writer, List<ExportedCodeBlock> exportedCodeBlocks) throws IOException {
+        JsonWriter jsonWriter = beginDocument(writer);
+        for (ExportedCodeBlock exportedCodeBlock: exportedCodeBlocks) {
+            GSON.toJson(exportedCodeBlock, ExportedCodeBlock.class, jsonWriter);
+        }
+        endDocument(jsonWriter);
+    }
+
+    /**
+     * Reads the blocks of a .rbt file one at a time and hands each to the consumer, so the file is never held in
+     * memory as a whole. Files of both format versions are accepted; blocks of version 1 files are numbered from 1 in
+     * file order, as id 0 belongs to the start command.
+     *
+     * @return the format version of the file
+     */
+    public static int readJson(Reader reader, Consumer<ExportedCodeBlock> consumer) throws IOException {
+        return readJson(reader, consumer, version -> {});
+    }
+
+    /**
+     * Like readJson(Reader, Consumer), but tells the format version before the first block is handed over. Files
+     * whose version comes after their blocks are taken as the current version.
+     */
+    private static int readJson(Reader reader, Consumer<ExportedCodeBlock> consumer, IntConsumer onVersion) throws IOException {
+        JsonReader jsonReader = new JsonReader(reader);
+        try {
+            if (jsonReader.peek() == JsonToken.BEGIN_ARRAY) {
+                onVersion.accept(LEGACY_FORMAT_VERSION);
+                readBlocks(jsonReader, consumer, true);
+
+                return LEGACY_FORMAT_VERSION;
+            }
+
+            int version = FORMAT_VERSION;
+            boolean versionKnown = false;
+            jsonReader.beginObject();
+            while (jsonReader.hasNext()) {
+                switch (jsonReader.nextName()) {
+                    case "version" -> {
+                        version = jsonReader.nextInt();
+                        if (version > FORMAT_VERSION) {
+                            throw new IOException("Unsupported file format version " + version);
+                        }
+                        if (!versionKnown) {
+                            onVersion.accept(version);
+                            versionKnown = true;
+                        }
+                    }
+                    case "blocks" -> {
+                        if (!versionKnown) {
+                            onVersion.accept(version);
+                            versionKnown = true;
+                        }
+                        readBlocks(jsonReader, consumer, false);
+                    }
+                    default -> jsonReader.skipValue();
+                }
+            }
+            jsonReader.endObject();
+
+            return version;
+        } catch (JsonParseException | IllegalStateException | NumberFormatException e) {
+            throw new IOException("Invalid file", e);
+        }
+    }
+
+    public static String translateToJson(List<ExportedCodeBlock> exportedCodeBlocks) {
+        StringWriter writer = new StringWriter();
+        try {
+            writeJson(writer, exportedCodeBlocks);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
 
-        return new Gson().toJson(exportedCodeBlocks);
+        return writer.toString();
     }
 
     public static List<ExportedCodeBlock> translateToStatements(String json) {
-        TypeToken<List<ExportedCodeBlock>> listType = new TypeToken<>(){};
+        return readStatements(new StringReader(json));
+    }
 
-        return new Gson().fromJson(json, listType);
+    public static List<ExportedCodeBlock> readStatements(Reader reader) {
+        List<ExportedCodeBlock> exportedCodeBlocks = new ArrayList<>();
+        try {
+            readJson(reader, exportedCodeBlocks::add);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        return exportedCodeBlocks;
+    }
+
+    /**
+     * Reads a project into a new flow without any UI.
+     */
+    public static Flow readFlow(Reader reader) throws IOException {
+        Flow flow = new Flow();
+        readFlow(reader, flow, (exportedCodeBlock, flowCommand) -> {});
+
+        return flow;
+    }
+
+    /**
+     * Reads a project file in either format into a new flow without any UI.
+     */
+    public static Flow readFlow(Path file) throws IOException {
+        if (BinaryProjectFormat.isBinaryFile(file)) {
+            return BinaryProjectFormat.readFlow(file);
+        }
+
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return readFlow(reader);
+        }
+    }
+
+    /**
+     * Reads a project into the given, freshly reset flow. Every block is handed to the consumer together with its
+     * command. Once all blocks are read the commands are linked in one pass, and the states are updated once.
+     */
+    public static void readFlow(Reader reader, Flow flow, BiConsumer<ExportedCodeBlock, FlowCommand> consumer) throws IOException {
+        FlowLoader loader = new FlowLoader(flow, consumer);
+        readJson(reader, loader::add, version -> loader.setLinkedByPosition(version < FORMAT_VERSION));
+        loader.link();
+    }
+
+    /**
+     * Builds a flow from exported code blocks without any UI. Blocks without explicit links are linked the way the
+     * editor snaps them: a block follows another one if it sits directly below it.
+     */
+    public static Flow translateToFlow(List<ExportedCodeBlock> exportedCodeBlocks) {
+        Flow flow = new Flow();
+        translateToFlow(exportedCodeBlocks, flow, (exportedCodeBlock, flowCommand) -> {});
+
+        return flow;
+    }
+
+    /**
+     * Builds the given, freshly reset flow from exported code blocks and hands every block to the consumer together
+     * with its command.
+     */
+    public static void translateToFlow(List<ExportedCodeBlock> exportedCodeBlocks, Flow flow, BiConsumer<ExportedCodeBlock, FlowCommand> consumer) {
+        boolean linked = false;
+        for (ExportedCodeBlock exportedCodeBlock: exportedCodeBlocks) {
+            linked |= exportedCodeBlock.getNext() != null;
+        }
+
+        FlowLoader loader = new FlowLoader(flow, consumer);
+        loader.setLinkedByPosition(!linked);
+        for (ExportedCodeBlock exportedCodeBlock: exportedCodeBlocks) {
+            loader.add(exportedCodeBlock);
+        }
+        loader.link();
+    }
+
+    private static JsonWriter beginDocument(Writer writer) throws IOException {
+        JsonWriter jsonWriter = new JsonWriter(writer);
+        jsonWriter.beginObject();
+        jsonWriter.name("version").value(FORMAT_VERSION);
+        jsonWriter.name("blocks").beginArray();
+
+        return jsonWriter;
+    }
+
+    private static void endDocument(JsonWriter jsonWriter) throws IOException {
+        jsonWriter.endArray();
+        jsonWriter.endObject();
+        jsonWriter.flush();
+    }
+
+    private static void readBlocks(JsonReader jsonReader, Consumer<ExportedCodeBlock> consumer, boolean legacy) throws IOException {
+        int index = 0;
+        jsonReader.beginArray();
+        while (jsonReader.hasNext()) {
+            ExportedCodeBlock exportedCodeBlock = GSON.fromJson(jsonReader, ExportedCodeBlock.class);
+            if (legacy) {
+                exportedCodeBlock.setId(index + 1);
+            }
+
+            consumer.accept(exportedCodeBlock);
+            index++;
+        }
+        jsonReader.endArray();
     }
 
 }
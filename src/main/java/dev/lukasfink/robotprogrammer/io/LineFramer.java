@@ -0,0 +1,123 @@
+package dev.lukasfink.robotprogrammer.io;
+
+/**
+ * Splits a stream of bytes into lines. Bytes are kept in a fixed ring buffer and complete lines are handed to the
+ * listener as a view onto that buffer, so no arrays or strings are created while receiving.
+ */
+public class LineFramer {
+
+    private final byte[] ring;
+    private final int mask;
+
+    private final LineListener listener;
+    private final LineView lineView;
+
+    private int lineStart;
+    private int writeIndex;
+
+    /**
+     * @param capacity Maximum line length, rounded up to a power of two. Longer lines lose their beginning.
+     */
+    public LineFramer(int capacity, LineListener listener) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        this.ring = new byte[size];
+        this.mask = size - 1;
+        this.listener = listener;
+        this.lineView = new LineView();
+    }
+
+    public void feed(byte[] data, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte value = data[i];
+            if (value == '\n' || value == '\r') {
+                if (writeIndex != lineStart) {
+                    lineView.length = writeIndex - lineStart;
+                    lineView.start = lineStart;
+                    listener.onLine(lineView);
+                }
+
+                lineStart = writeIndex;
+                continue;
+            }
+
+            if (writeIndex - lineStart == ring.length) {
+                lineStart++;
+            }
+
+            ring[writeIndex & mask] = value;
+            writeIndex++;
+        }
+    }
+
+    /**
+     * Compares a line with the given text, ignoring surrounding whitespace.
+     */
+    public static boolean matches(CharSequence line, String text) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+
+        if (end - start != text.length()) {
+            return false;
+        }
+
+        for (int i = 0; i < text.length(); i++) {
+            if (line.charAt(start + i) != text.charAt(i)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private class LineView implements CharSequence {
+
+        private int start;
+        private int length;
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+
+            return (char) (ring[(start + index) & mask] & 0xFF);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder line = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                line.append(charAt(i));
+            }
+
+            return line.toString();
+        }
+
+    }
+
+    /**
+     * Receives complete lines. The line is only valid during the call, use toString() to keep it.
+     */
+    public interface LineListener {
+
+        void onLine(CharSequence line);
+
+    }
+
+}
@@ -0,0 +1,76 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads a program over a robot link and waits until the robot acknowledged it. The upload fails if the robot doesn't
+ * greet after the link was opened, as it wouldn't listen to the frame either.
+ */
+public class ProgramUploader {
+
+    private static final long BOOT_TIMEOUT = 2500;
+
+    private static final int READ_BUFFER_SIZE = 256;
+
+    private static final long ACK_TIMEOUT = 1000;
+    private static final int MAX_RETRIES = 3;
+
+    private final RobotLink link;
+
+    private volatile CountDownLatch booted;
+    private volatile FlowControlWindow flowControlWindow;
+
+    public ProgramUploader(RobotLink link) {
+        this.link = link;
+    }
+
+    /**
+     * @return The round trip time of the acknowledged upload.
+     */
+    public Duration upload(Flow flow) throws IOException, InterruptedException, ExecutionException {
+        // Responses are handled as soon as their line is complete
+        LineFramer lineFramer = new LineFramer(READ_BUFFER_SIZE, this::receiveLine);
+        booted = new CountDownLatch(1);
+        link.setReceiver(lineFramer::feed);
+        link.open();
+        // The robot stores the whole program from one frame, so there is never more than one frame in flight
+        try (FlowControlWindow window = new FlowControlWindow(link::write, 1, ACK_TIMEOUT, MAX_RETRIES)) {
+            flowControlWindow = window;
+
+            // The robot restarts when the port gets opened, so wait for its greeting
+            awaitBoot();
+
+            return window.send(sequence -> RobotProtocol.encodeProgram(flow, sequence)).get();
+        } finally {
+            flowControlWindow = null;
+            link.close();
+        }
+    }
+
+    private void awaitBoot() throws IOException, InterruptedException {
+        if (!booted.await(BOOT_TIMEOUT, TimeUnit.MILLISECONDS)) {
+            throw new IOException("Robot did not greet within " + BOOT_TIMEOUT + " ms after the port was opened");
+        }
+    }
+
+    private void receiveLine(CharSequence line) {
+        FlowControlWindow window = flowControlWindow;
+        int acknowledgedSequence = RobotProtocol.acknowledgedSequence(line);
+        if (window != null && acknowledgedSequence >= 0) {
+            window.acknowledge(acknowledgedSequence);
+        } else if (window != null && LineFramer.matches(line, RobotProtocol.NAK)) {
+            System.out.println("Robot rejected a frame, retransmitting the frames in flight");
+            window.reject();
+        } else {
+            System.out.println("Received: " + line);
+            booted.countDown();
+        }
+    }
+
+}
@@ -0,0 +1,420 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Autosave of the edited project as an append-only log of edit operations. The editor only queues small, fixed-size
+ * entries; a background thread writes them in batches, syncs the file at most once per interval and, once the log
+ * grows too long, compacts it into a binary snapshot.
+ *
+ * <p>The background thread keeps its own copy of the project by applying every entry, so snapshots never need the FX
+ * thread. All entries set state instead of changing it relatively, so replaying a log over a snapshot that already
+ * contains some of its entries still ends in the same project.</p>
+ *
+ * <p>The autosave files belong to the instance holding the lock file of the directory. Further instances and an
+ * instance whose journal failed to write stop recording, the callback given to start() tells why.</p>
+ *
+ * <p>A journal entry is 25 bytes: type (1 byte) | a (4 bytes) | b (4 bytes) | x (8 bytes) | y (8 bytes).</p>
+ */
+public class ProjectJournal implements AutoCloseable {
+
+    private static final String JOURNAL_FILE = "autosave.journal";
+    private static final String SNAPSHOT_FILE = "autosave." + BinaryProjectFormat.FILE_EXTENSION;
+    private static final String SNAPSHOT_TEMP_FILE = "autosave.tmp";
+    private static final String LOCK_FILE = "autosave.lock";
+
+    private static final byte TYPE_ADD = 1;
+    private static final byte TYPE_MOVE = 2;
+    private static final byte TYPE_LINK = 3;
+    private static final byte TYPE_UNLINK = 4;
+    private static final byte TYPE_DELETE = 5;
+    private static final byte TYPE_RESET = 6;
+    private static final byte TYPE_STOP = 7;
+
+    private static final int ENTRY_LENGTH = 25;
+
+    private static final long SYNC_INTERVAL_MILLIS = 1000;
+    private static final int COMPACTION_THRESHOLD = 10000;
+
+    private final Path directory;
+
+    private final BlockingQueue<Entry> queue;
+    private final CountDownLatch recoveryDone;
+
+    /**
+     * The project as the journal knows it, only touched by the journal thread
+     */
+    private final LinkedHashMap<Integer, ExportedCodeBlock> blocks;
+
+    /**
+     * Id of the preceding block per linked block of the kept project
+     */
+    private final HashMap<Integer, Integer> previousIds;
+
+    private Thread thread;
+    private FileChannel channel;
+
+    private FileChannel lockChannel;
+    private FileLock lock;
+
+    /**
+     * Whether edits are still queued, false once the journal can't write them
+     */
+    private volatile boolean recording;
+
+    private int entriesSinceSnapshot;
+    private boolean unsynced;
+    private long lastSync;
+
+    public ProjectJournal(Path directory) {
+        this.directory = directory;
+
+        queue = new LinkedBlockingQueue<>();
+        recoveryDone = new CountDownLatch(1);
+        blocks = new LinkedHashMap<>();
+        previousIds = new HashMap<>();
+        recording = true;
+    }
+
+    public static Path defaultDirectory() {
+        return Path.of(System.getProperty("user.home"), ".robotprogrammer");
+    }
+
+    /**
+     * Starts the journal thread. It first reads what an earlier session left behind. If that is a project, it is
+     * handed to the callback on the journal thread, and nothing is written until resume() is called. Entries are
+     * queued from construction on, so edits made before start() and in the meantime are kept.
+     *
+     * @param onFailure called on the journal thread if the autosave can't be used, after which nothing is recorded
+     */
+    public void start(Consumer<List<ExportedCodeBlock>> onRecovered, Consumer<IOException> onFailure) {
+        recording = true;
+        thread = new Thread(() -> run(onRecovered, onFailure), "project-journal");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Lets the journal replace the files of the earlier session with the current project.
+     */
+    public void resume() {
+        recoveryDone.countDown();
+    }
+
+    public void recordAdd(FlowCommand command, double x, double y) {
+        record(new Entry(TYPE_ADD, command.getId(), command.getInstruction().getOpcode(), x, y));
+    }
+
+    public void recordMove(FlowCommand command, double x, double y) {
+        record(new Entry(TYPE_MOVE, command.getId(), 0, x, y));
+    }
+
+    public void recordLink(FlowCommand previous, FlowCommand next) {
+        record(new Entry(TYPE_LINK, previous.getId(), next.getId(), 0, 0));
+    }
+
+    public void recordUnlink(FlowCommand previous, FlowCommand next) {
+        record(new Entry(TYPE_UNLINK, previous.getId(), next.getId(), 0, 0));
+    }
+
+    public void recordDelete(FlowCommand command) {
+        record(new Entry(TYPE_DELETE, command.getId(), 0, 0, 0));
+    }
+
+    public void recordReset() {
+        record(new Entry(TYPE_RESET, 0, 0, 0, 0));
+    }
+
+    private void record(Entry entry) {
+        if (recording) {
+            queue.add(entry);
+        }
+    }
+
+    /**
+     * Writes the outstanding entries and removes the autosave files, as nothing needs to be recovered after a clean
+     * exit. The files of another instance are left alone.
+     */
+    @Override
+    public void close() throws InterruptedException, IOException {
+        if (thread == null) {
+            return;
+        }
+
+        queue.add(new Entry(TYPE_STOP, 0, 0, 0, 0));
+        recoveryDone.countDown();
+        thread.join();
+        thread = null;
+
+        if (lock != null) {
+            Files.deleteIfExists(directory.resolve(JOURNAL_FILE));
+            Files.deleteIfExists(directory.resolve(SNAPSHOT_FILE));
+            lock.release();
+            lock = null;
+        }
+
+        if (lockChannel != null) {
+            lockChannel.close();
+            lockChannel = null;
+        }
+    }
+
+    private void run(Consumer<List<ExportedCodeBlock>> onRecovered, Consumer<IOException> onFailure) {
+        try {
+            lock();
+        } catch (IOException e) {
+            stopRecording();
+            onFailure.accept(e);
+            return;
+        }
+
+        try {
+            recover();
+            if (blocks.isEmpty()) {
+                recoveryDone.countDown();
+            } else {
+                onRecovered.accept(new ArrayList<>(blocks.values()));
+            }
+            recoveryDone.await();
+
+            blocks.clear();
+            previousIds.clear();
+            channel = FileChannel.open(directory.resolve(JOURNAL_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            compact();
+
+            List<Entry> batch = new ArrayList<>();
+            boolean running = true;
+            while (running) {
+                Entry first = queue.poll(SYNC_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch);
+                    running = write(batch);
+                    batch.clear();
+                }
+
+                if (unsynced && (!running || System.currentTimeMillis() - lastSync >= SYNC_INTERVAL_MILLIS)) {
+                    channel.force(false);
+                    unsynced = false;
+                    lastSync = System.currentTimeMillis();
+                }
+
+                if (running && entriesSinceSnapshot >= COMPACTION_THRESHOLD) {
+                    compact();
+                }
+            }
+
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            stopRecording();
+            closeQuietly(channel);
+            onFailure.accept(e);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+            stopRecording();
+        }
+    }
+
+    /**
+     * Takes the lock file of the directory, which is released on close or when the process ends.
+     */
+    private void lock() throws IOException {
+        Files.createDirectories(directory);
+        lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        try {
+            lock = lockChannel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            lock = null;
+        }
+
+        if (lock == null) {
+            throw new IOException("Autosave in " + directory + " is used by another instance");
+        }
+    }
+
+    private void stopRecording() {
+        recording = false;
+        queue.clear();
+    }
+
+    private static void closeQuietly(FileChannel fileChannel) {
+        if (fileChannel == null) {
+            return;
+        }
+
+        try {
+            fileChannel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the batch to the journal and applies it to the kept project.
+     *
+     * @return false if the batch asked the journal to stop
+     */
+    private boolean write(List<Entry> batch) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(batch.size() * ENTRY_LENGTH);
+        boolean running = true;
+        for (Entry entry: batch) {
+            if (entry.type == TYPE_STOP) {
+                running = false;
+                break;
+            }
+
+            buffer.put(entry.type);
+            buffer.putInt(entry.a);
+            buffer.putInt(entry.b);
+            buffer.putDouble(entry.x);
+            buffer.putDouble(entry.y);
+            apply(entry);
+            entriesSinceSnapshot++;
+        }
+        buffer.flip();
+
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        unsynced = true;
+
+        return running;
+    }
+
+    private void apply(Entry entry) {
+        switch (entry.type) {
+            case TYPE_ADD -> blocks.put(entry.a, new ExportedCodeBlock(entry.a, entry.x, entry.y, RobotInstruction.byOpcode((byte) entry.b).getValue(), null));
+            case TYPE_MOVE -> {
+                ExportedCodeBlock block = blocks.get(entry.a);
+                if (block != null) {
+                    block.setPosX(entry.x);
+                    block.setPosY(entry.y);
+                }
+            }
+            case TYPE_LINK -> {
+                ExportedCodeBlock previous = blocks.get(entry.a);
+                ExportedCodeBlock next = blocks.get(entry.b);
+                if (previous != null && next != null) {
+                    previous.setNext(entry.b);
+                    previousIds.put(entry.b, entry.a);
+                }
+            }
+            case TYPE_UNLINK -> {
+                ExportedCodeBlock previous = blocks.get(entry.a);
+                if (previous != null && previous.getNext() != null && previous.getNext() == entry.b) {
+                    previous.setNext(null);
+                }
+
+                previousIds.remove(entry.b, entry.a);
+            }
+            case TYPE_DELETE -> {
+                ExportedCodeBlock block = blocks.remove(entry.a);
+                if (block != null && block.getNext() != null) {
+                    previousIds.remove(block.getNext(), entry.a);
+                }
+
+                Integer previousId = previousIds.remove(entry.a);
+                ExportedCodeBlock previous = previousId != null ? blocks.get(previousId) : null;
+                if (previous != null && previous.getNext() != null && previous.getNext() == entry.a) {
+                    previous.setNext(null);
+                }
+            }
+            case TYPE_RESET -> {
+                blocks.clear();
+                previousIds.clear();
+            }
+        }
+    }
+
+    /**
+     * Writes the kept project to the snapshot and empties the journal. The snapshot is synced and then moved over the
+     * old one, so there is a complete snapshot at any time.
+     */
+    private void compact() throws IOException {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path snapshotTemp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        BinaryProjectFormat.write(snapshotTemp, new ArrayList<>(blocks.values()));
+        try (FileChannel snapshotChannel = FileChannel.open(snapshotTemp, StandardOpenOption.WRITE)) {
+            snapshotChannel.force(true);
+        }
+        Files.move(snapshotTemp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        channel.truncate(0);
+        channel.force(true);
+        entriesSinceSnapshot = 0;
+        unsynced = false;
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     * Loads the snapshot and replays the journal of an earlier session. A torn last entry is ignored.
+     */
+    private void recover() {
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        Path journal = directory.resolve(JOURNAL_FILE);
+        try {
+            if (Files.exists(snapshot)) {
+                BinaryProjectFormat.read(snapshot, block -> blocks.put(block.getId(), block));
+                for (ExportedCodeBlock block: blocks.values()) {
+                    if (block.getNext() != null && blocks.containsKey(block.getNext())) {
+                        previousIds.put(block.getNext(), block.getId());
+                    }
+                }
+            }
+
+            if (Files.exists(journal)) {
+                ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(journal));
+                while (buffer.remaining() >= ENTRY_LENGTH) {
+                    Entry entry = new Entry(buffer.get(), buffer.getInt(), buffer.getInt(), buffer.getDouble(), buffer.getDouble());
+                    if (entry.type < TYPE_ADD || entry.type > TYPE_RESET) {
+                        break;
+                    }
+
+                    apply(entry);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static class Entry {
+
+        private final byte type;
+        private final int a;
+        private final int b;
+        private final double x;
+        private final double y;
+
+        private Entry(byte type, int a, int b, double x, double y) {
+            this.type = type;
+            this.a = a;
+            this.b = b;
+            this.x = x;
+            this.y = y;
+        }
+
+    }
+
+}
@@ -0,0 +1,30 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import java.io.IOException;
+
+/**
+ * Byte transport to a robot, either a real one on a serial port or a virtual one.
+ */
+public interface RobotLink extends AutoCloseable {
+
+    String getName();
+
+    /**
+     * Sets where received bytes go. Must be called before the link gets opened.
+     */
+    void setReceiver(Receiver receiver);
+
+    void open() throws IOException;
+
+    void write(byte[] data) throws IOException;
+
+    @Override
+    void close();
+
+    interface Receiver {
+
+        void receive(byte[] data, int offset, int length);
+
+    }
+
+}
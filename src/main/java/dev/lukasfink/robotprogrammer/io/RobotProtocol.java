@@ -0,0 +1,129 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import dev.lukasfink.robotprogrammer.flow.Flow;
+import dev.lukasfink.robotprogrammer.flow.FlowCommand;
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+
+/**
+ * Binary framing of programs sent to the robot. A frame looks like this:
+ *
+ * <pre>
+ * 0xA5 | sequence | length (2 bytes, big endian) | one opcode per command | CRC-16/CCITT of sequence, length and opcodes (2 bytes, big endian)
+ * </pre>
+ *
+ * The opcodes are the ones of the commands between start and end of the flow. The robot answers a frame with a single
+ * line "ACK &lt;sequence&gt;", so every acknowledgement names the frame it belongs to, or "NAK" if the frame was
+ * damaged. A NAK has no sequence number, as the one of a damaged frame can't be trusted.
+ */
+public class RobotProtocol {
+
+    public static final byte FRAME_START = (byte) 0xA5;
+
+    public static final int HEADER_LENGTH = 4;
+    public static final int CRC_LENGTH = 2;
+
+    /**
+     * Sequence numbers are a single byte and wrap around
+     */
+    public static final int SEQUENCE_COUNT = 256;
+
+    /**
+     * Must match MAX_COMMANDS in robot.ino.
+     */
+    public static final int MAX_PROGRAM_LENGTH = 256;
+
+    public static final String ACK = "ACK";
+    public static final String NAK = "NAK";
+
+    public static byte[] encodeProgram(Flow flow, int sequence) {
+        int length = 0;
+        FlowCommand currentCommand = flow.getStartCommand();
+        while (currentCommand.hasNext()) {
+            currentCommand = currentCommand.getNext();
+            if (currentCommand.getInstruction() != RobotInstruction.TERMINATE) {
+                length++;
+            }
+        }
+
+        if (length > MAX_PROGRAM_LENGTH) {
+            throw new IllegalArgumentException("Program has " + length + " commands, the robot can store only " + MAX_PROGRAM_LENGTH);
+        }
+
+        byte[] frame = new byte[HEADER_LENGTH + length + CRC_LENGTH];
+        frame[0] = FRAME_START;
+        frame[1] = (byte) sequence;
+        frame[2] = (byte) (length >>> 8);
+        frame[3] = (byte) length;
+
+        int position = HEADER_LENGTH;
+        currentCommand = flow.getStartCommand();
+        while (currentCommand.hasNext()) {
+            currentCommand = currentCommand.getNext();
+            if (currentCommand.getInstruction() != RobotInstruction.TERMINATE) {
+                frame[position++] = currentCommand.getInstruction().getOpcode();
+            }
+        }
+
+        int crc = crc16(frame, 1, position - 1);
+        frame[position++] = (byte) (crc >>> 8);
+        frame[position] = (byte) crc;
+
+        return frame;
+    }
+
+    /**
+     * Returns the sequence number of an "ACK &lt;sequence&gt;" line, or -1 if the line is no acknowledgement.
+     */
+    public static int acknowledgedSequence(CharSequence line) {
+        int start = 0;
+        int end = line.length();
+        while (start < end && Character.isWhitespace(line.charAt(start))) {
+            start++;
+        }
+        while (end > start && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+
+        int digitsStart = start + ACK.length() + 1;
+        if (end <= digitsStart || end - digitsStart > 3) {
+            return -1;
+        }
+
+        for (int i = 0; i < ACK.length(); i++) {
+            if (line.charAt(start + i) != ACK.charAt(i)) {
+                return -1;
+            }
+        }
+
+        if (line.charAt(start + ACK.length()) != ' ') {
+            return -1;
+        }
+
+        int sequence = 0;
+        for (int i = digitsStart; i < end; i++) {
+            char digit = line.charAt(i);
+            if (digit < '0' || digit > '9') {
+                return -1;
+            }
+            sequence = sequence * 10 + (digit - '0');
+        }
+
+        return sequence < SEQUENCE_COUNT ? sequence : -1;
+    }
+
+    /**
+     * CRC-16/CCITT-FALSE (polynomial 0x1021, initial value 0xFFFF), which is cheap to compute on the robot.
+     */
+    public static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset; i < offset + length; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ 0x1021 : crc << 1;
+            }
+        }
+
+        return crc & 0xFFFF;
+    }
+
+}
@@ -0,0 +1,103 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Link to a robot connected to a serial port.
+ */
+public class SerialRobotLink implements RobotLink {
+
+    private static final int BAUD_RATE = 9600;
+    private static final int READ_BUFFER_SIZE = 256;
+
+    private final SerialPort serialPort;
+
+    private Receiver receiver;
+    private OutputStream outputStream;
+
+    public SerialRobotLink(SerialPort serialPort) {
+        this.serialPort = serialPort;
+    }
+
+    /**
+     * Lists the serial ports which have an Arduino connected.
+     */
+    public static List<RobotLink> discover() {
+        List<RobotLink> links = new ArrayList<>();
+        for (SerialPort serialPort: SerialPort.getCommPorts()) {
+            if (serialPort.getPortDescription().contains("Arduino")) {
+                links.add(new SerialRobotLink(serialPort));
+            }
+        }
+
+        return links;
+    }
+
+    @Override
+    public String getName() {
+        return serialPort.getPortDescription();
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void open() throws IOException {
+        if (!serialPort.openPort(20)) {
+            throw new IOException("Error opening serial port");
+        }
+
+        serialPort.setComPortParameters(BAUD_RATE, 8, 1, SerialPort.NO_PARITY);
+        outputStream = serialPort.getOutputStream();
+
+        if (receiver != null) {
+            serialPort.addDataListener(createDataListener(receiver));
+        }
+    }
+
+    @Override
+    public void write(byte[] data) throws IOException {
+        outputStream.write(data);
+        outputStream.flush();
+    }
+
+    @Override
+    public void close() {
+        serialPort.removeDataListener();
+        serialPort.closePort();
+    }
+
+    private SerialPortDataListener createDataListener(Receiver receiver) {
+        byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+
+        return new SerialPortDataListener() {
+            @Override
+            public int getListeningEvents() {
+                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+            }
+
+            @Override
+            public void serialEvent(SerialPortEvent event) {
+                int available;
+                while ((available = serialPort.bytesAvailable()) > 0) {
+                    int bytesRead = serialPort.readBytes(readBuffer, Math.min(available, readBuffer.length));
+                    if (bytesRead <= 0) {
+                        break;
+                    }
+
+                    receiver.receive(readBuffer, 0, bytesRead);
+                }
+            }
+        };
+    }
+
+}
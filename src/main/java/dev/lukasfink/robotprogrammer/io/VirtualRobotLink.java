@@ -0,0 +1,177 @@
+package dev.lukasfink.robotprogrammer.io;
+
+import dev.lukasfink.robotprogrammer.flow.RobotInstruction;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process robot which parses program frames like robot.ino does and answers them with the same lines. The time
+ * the bytes need on a 9600 baud line is emulated, additional latency and frame loss can be injected. Frames with an
+ * opcode the robot can't run, including start and end, are rejected with NAK.
+ */
+public class VirtualRobotLink implements RobotLink {
+
+    private static final int BAUD_RATE = 9600;
+    private static final int BITS_PER_BYTE = 10;
+
+    private static final String GREETING = "Let the games begin!";
+
+    private final long latencyMillis;
+    private final double lossRate;
+    private final Random random;
+
+    private final byte[] frameBuffer;
+    private int frameLength;
+
+    private Receiver receiver;
+    private ScheduledExecutorService scheduler;
+    private long lineFreeAt;
+
+    private volatile List<RobotInstruction> program;
+
+    public VirtualRobotLink() {
+        this(0, 0);
+    }
+
+    /**
+     * @param latencyMillis Additional delay before the robot answers a frame.
+     * @param lossRate Probability between 0 and 1 that a frame gets lost on its way to the robot. A lost frame
+     *                 neither changes the program nor gets an answer.
+     */
+    public VirtualRobotLink(long latencyMillis, double lossRate) {
+        this.latencyMillis = latencyMillis;
+        this.lossRate = lossRate;
+        this.random = new Random();
+
+        frameBuffer = new byte[RobotProtocol.HEADER_LENGTH + RobotProtocol.MAX_PROGRAM_LENGTH + RobotProtocol.CRC_LENGTH];
+        program = Collections.emptyList();
+    }
+
+    @Override
+    public String getName() {
+        return "Virtueller Roboter";
+    }
+
+    @Override
+    public void setReceiver(Receiver receiver) {
+        this.receiver = receiver;
+    }
+
+    @Override
+    public void open() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "virtual-robot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        lineFreeAt = System.nanoTime();
+        respond(GREETING, 0);
+    }
+
+    @Override
+    public synchronized void write(byte[] data) throws IOException {
+        if (scheduler == null) {
+            throw new IOException("Virtual robot isn't connected");
+        }
+
+        long now = System.nanoTime();
+        lineFreeAt = Math.max(lineFreeAt, now) + TimeUnit.MILLISECONDS.toNanos(transmissionMillis(data.length));
+
+        for (byte value: data) {
+            if (frameLength == 0 && value != RobotProtocol.FRAME_START) {
+                continue;
+            }
+
+            frameBuffer[frameLength++] = value;
+            if (frameLength < RobotProtocol.HEADER_LENGTH) {
+                continue;
+            }
+
+            int length = ((frameBuffer[2] & 0xFF) << 8) | (frameBuffer[3] & 0xFF);
+            if (length > RobotProtocol.MAX_PROGRAM_LENGTH) {
+                frameLength = 0;
+                if (!isLost()) {
+                    respondToFrame(RobotProtocol.NAK, now);
+                }
+            } else if (frameLength == RobotProtocol.HEADER_LENGTH + length + RobotProtocol.CRC_LENGTH) {
+                frameLength = 0;
+                if (!isLost()) {
+                    respondToFrame(receiveProgram(length), now);
+                }
+            }
+        }
+    }
+
+    private String receiveProgram(int length) {
+        int crcPosition = RobotProtocol.HEADER_LENGTH + length;
+        int crc = ((frameBuffer[crcPosition] & 0xFF) << 8) | (frameBuffer[crcPosition + 1] & 0xFF);
+        if (crc != RobotProtocol.crc16(frameBuffer, 1, length + 3)) {
+            return RobotProtocol.NAK;
+        }
+
+        // Like robot.ino, only commands the robot can run are accepted, start and end are never part of a frame
+        List<RobotInstruction> receivedProgram = new ArrayList<>(length);
+        try {
+            for (int i = 0; i < length; i++) {
+                RobotInstruction instruction = RobotInstruction.byOpcode(frameBuffer[RobotProtocol.HEADER_LENGTH + i]);
+                if (instruction == RobotInstruction.INIT || instruction == RobotInstruction.TERMINATE) {
+                    return RobotProtocol.NAK;
+                }
+                receivedProgram.add(instruction);
+            }
+        } catch (RuntimeException e) {
+            return RobotProtocol.NAK;
+        }
+        program = Collections.unmodifiableList(receivedProgram);
+
+        return RobotProtocol.ACK + " " + (frameBuffer[1] & 0xFF);
+    }
+
+    private boolean isLost() {
+        return random.nextDouble() < lossRate;
+    }
+
+    private void respondToFrame(String line, long now) {
+        long frameArrivedAfter = TimeUnit.NANOSECONDS.toMillis(lineFreeAt - now);
+        respond(line, frameArrivedAfter + latencyMillis + transmissionMillis(line.length() + 2));
+    }
+
+    private void respond(String line, long delayMillis) {
+        byte[] data = (line + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        scheduler.schedule(() -> {
+            if (receiver != null) {
+                receiver.receive(data, 0, data.length);
+            }
+        }, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static long transmissionMillis(int bytes) {
+        return (long) bytes * BITS_PER_BYTE * 1000 / BAUD_RATE;
+    }
+
+    /**
+     * The program which was received last.
+     */
+    public List<RobotInstruction> getProgram() {
+        return program;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        frameLength = 0;
+    }
+
+}
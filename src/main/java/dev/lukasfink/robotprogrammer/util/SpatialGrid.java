@@ -0,0 +1,150 @@
+package dev.lukasfink.robotprogrammer.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Uniform grid over rectangles, used to find the items near a position without testing all of them. Items are stored
+ * in every cell their rectangle touches.
+ */
+public class SpatialGrid<T> {
+
+    private final double cellSize;
+
+    private final HashMap<Long, List<T>> cells;
+    private final HashMap<T, Entry> entries;
+
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+
+        cells = new HashMap<>();
+        entries = new HashMap<>();
+    }
+
+    /**
+     * Adds an item or moves it to the given rectangle.
+     */
+    public void put(T item, double x, double y, double width, double height) {
+        int minColumn = cell(x);
+        int minRow = cell(y);
+        int maxColumn = cell(x + width);
+        int maxRow = cell(y + height);
+
+        Entry entry = entries.get(item);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(item, entry);
+        } else if (entry.minColumn != minColumn || entry.minRow != minRow || entry.maxColumn != maxColumn || entry.maxRow != maxRow) {
+            removeFromCells(item, entry);
+            entry.registered = false;
+        }
+
+        entry.x = x;
+        entry.y = y;
+        entry.width = width;
+        entry.height = height;
+
+        if (!entry.registered) {
+            entry.minColumn = minColumn;
+            entry.minRow = minRow;
+            entry.maxColumn = maxColumn;
+            entry.maxRow = maxRow;
+            entry.registered = true;
+            for (int column = minColumn; column <= maxColumn; column++) {
+                for (int row = minRow; row <= maxRow; row++) {
+                    cells.computeIfAbsent(key(column, row), key -> new ArrayList<>(4)).add(item);
+                }
+            }
+        }
+    }
+
+    public void remove(T item) {
+        Entry entry = entries.remove(item);
+        if (entry != null) {
+            removeFromCells(item, entry);
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Returns all items whose rectangle intersects the given one. Touching edges count as intersection.
+     */
+    public List<T> query(double x, double y, double width, double height) {
+        List<T> result = new ArrayList<>();
+        int minColumn = cell(x);
+        int maxColumn = cell(x + width);
+        int minRow = cell(y);
+        int maxRow = cell(y + height);
+        for (int column = minColumn; column <= maxColumn; column++) {
+            for (int row = minRow; row <= maxRow; row++) {
+                List<T> cellItems = cells.get(key(column, row));
+                if (cellItems == null) {
+                    continue;
+                }
+
+                for (T item: cellItems) {
+                    Entry entry = entries.get(item);
+
+                    // Items spanning several cells are only reported from the first cell both rectangles share
+                    if (column != Math.max(minColumn, entry.minColumn) || row != Math.max(minRow, entry.minRow)) {
+                        continue;
+                    }
+
+                    if (entry.x + entry.width >= x && entry.y + entry.height >= y && entry.x <= x + width && entry.y <= y + height) {
+                        result.add(item);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void removeFromCells(T item, Entry entry) {
+        for (int column = entry.minColumn; column <= entry.maxColumn; column++) {
+            for (int row = entry.minRow; row <= entry.maxRow; row++) {
+                long key = key(column, row);
+                List<T> cellItems = cells.get(key);
+                if (cellItems != null) {
+                    cellItems.remove(item);
+                    if (cellItems.isEmpty()) {
+                        cells.remove(key);
+                    }
+                }
+            }
+        }
+    }
+
+    private int cell(double coordinate) {
+        return (int) Math.floor(coordinate / cellSize);
+    }
+
+    private static long key(int column, int row) {
+        return ((long) column << 32) ^ (row & 0xffffffffL);
+    }
+
+    private static class Entry {
+
+        private double x;
+        private double y;
+        private double width;
+        private double height;
+
+        private int minColumn;
+        private int minRow;
+        private int maxColumn;
+        private int maxRow;
+        private boolean registered;
+
+    }
+
+}
@@ -1,30 +1,69 @@
 package dev.lukasfink.robotprogrammer.util;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
-import java.util.regex.Pattern;
+import java.util.ResourceBundle;
 
+/**
+ * Replaces ${key} placeholders with their translations. The input is scanned once, so the cost of a call only
+ * depends on the length of the input and not on the number of known keys.
+ */
 public class Translator {
 
-    private static final HashMap<String, String> translations = new HashMap<>();
+    private static final String BUNDLE_NAME = "dev.lukasfink.robotprogrammer.util.translations";
+
+    private static final ThreadLocal<StringBuilder> outputBuffer = ThreadLocal.withInitial(StringBuilder::new);
+
+    private static volatile Map<String, String> translations;
 
     static {
-        translations.put("instruction.init", "Start");
-        translations.put("instruction.forward", "Vorwärts");
-        translations.put("instruction.backwards", "Rückwärts");
-        translations.put("instruction.turn_left", "Links");
-        translations.put("instruction.turn_right", "Rechts");
-        translations.put("instruction.terminate", "Ende");
-        translations.put("instruction.melody", "Melodie");
-        translations.put("instruction.blink", "Blinken");
+        setLocale(Locale.GERMAN);
+    }
+
+    /**
+     * Loads the translation table for the given locale. Missing locales fall back to the default bundle.
+     */
+    public static void setLocale(Locale locale) {
+        ResourceBundle bundle = ResourceBundle.getBundle(BUNDLE_NAME, locale);
+        HashMap<String, String> table = new HashMap<>();
+        for (String key: bundle.keySet()) {
+            table.put(key, bundle.getString(key));
+        }
+
+        translations = Collections.unmodifiableMap(table);
     }
 
     public static String translate(String input) {
-        for (Map.Entry<String, String> translation: translations.entrySet()) {
-            input = input.replaceAll(Pattern.quote("${" + translation.getKey() + "}"), translation.getValue());
+        int placeholderStart = input.indexOf("${");
+        if (placeholderStart < 0) {
+            return input;
         }
 
-        return input;
+        Map<String, String> table = translations;
+        StringBuilder output = outputBuffer.get();
+        output.setLength(0);
+
+        int copiedUntil = 0;
+        while (placeholderStart >= 0) {
+            int placeholderEnd = input.indexOf('}', placeholderStart + 2);
+            if (placeholderEnd < 0) {
+                break;
+            }
+
+            String translation = table.get(input.substring(placeholderStart + 2, placeholderEnd));
+            if (translation != null) {
+                output.append(input, copiedUntil, placeholderStart).append(translation);
+                copiedUntil = placeholderEnd + 1;
+            }
+
+            placeholderStart = input.indexOf("${", translation != null ? placeholderEnd + 1 : placeholderStart + 2);
+        }
+
+        output.append(input, copiedUntil, input.length());
+
+        return output.toString();
     }
 
 }
@@ -0,0 +1,169 @@
+package dev.lukasfink.robotprogrammer.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded undo/redo history. Edits are kept in a ring, so recording, undoing and redoing never copy the history; once
+ * the ring is full the oldest edit is dropped. Edits recorded between beginCompound and endCompound are undone and
+ * redone as one.
+ *
+ * <p>The bookkeeping of the history takes constant time per edit. Applying an edit costs what the edit itself does,
+ * e.g. linking or unlinking commands updates the chain states and the source code, which is linear in the length of
+ * the chain.</p>
+ */
+public class UndoHistory {
+
+    private final Edit[] edits;
+
+    /**
+     * Index of the oldest edit in the ring
+     */
+    private int start;
+
+    /**
+     * Number of edits that can be undone
+     */
+    private int undoCount;
+
+    /**
+     * Number of edits that can be redone, they follow the undoable ones in the ring
+     */
+    private int redoCount;
+
+    private CompoundEdit compound;
+
+    private boolean applying;
+
+    public UndoHistory(int capacity) {
+        edits = new Edit[capacity];
+    }
+
+    /**
+     * Records an edit that has already been done. Edits recorded while an edit is undone or redone are ignored.
+     */
+    public void record(Edit edit) {
+        if (applying) {
+            return;
+        }
+
+        if (compound != null) {
+            compound.edits.add(edit);
+        } else {
+            push(edit);
+        }
+    }
+
+    public void beginCompound() {
+        if (compound == null) {
+            compound = new CompoundEdit();
+        }
+    }
+
+    public void endCompound() {
+        CompoundEdit finishedCompound = compound;
+        compound = null;
+        if (finishedCompound != null && !finishedCompound.edits.isEmpty()) {
+            push(finishedCompound.edits.size() == 1 ? finishedCompound.edits.get(0) : finishedCompound);
+        }
+    }
+
+    public boolean canUndo() {
+        return undoCount > 0;
+    }
+
+    public boolean canRedo() {
+        return redoCount > 0;
+    }
+
+    public void undo() {
+        if (!canUndo()) {
+            return;
+        }
+
+        undoCount--;
+        redoCount++;
+        apply(edits[(start + undoCount) % edits.length], false);
+    }
+
+    public void redo() {
+        if (!canRedo()) {
+            return;
+        }
+
+        Edit edit = edits[(start + undoCount) % edits.length];
+        undoCount++;
+        redoCount--;
+        apply(edit, true);
+    }
+
+    public void clear() {
+        for (int i = 0; i < edits.length; i++) {
+            edits[i] = null;
+        }
+
+        start = 0;
+        undoCount = 0;
+        redoCount = 0;
+        compound = null;
+    }
+
+    private void push(Edit edit) {
+        // A new edit makes the undone edits unreachable
+        for (int i = 0; i < redoCount; i++) {
+            edits[(start + undoCount + i) % edits.length] = null;
+        }
+        redoCount = 0;
+
+        if (undoCount == edits.length) {
+            edits[start] = null;
+            start = (start + 1) % edits.length;
+            undoCount--;
+        }
+
+        edits[(start + undoCount) % edits.length] = edit;
+        undoCount++;
+    }
+
+    private void apply(Edit edit, boolean redo) {
+        applying = true;
+        try {
+            if (redo) {
+                edit.redo();
+            } else {
+                edit.undo();
+            }
+        } finally {
+            applying = false;
+        }
+    }
+
+    private static class CompoundEdit implements Edit {
+
+        private final List<Edit> edits = new ArrayList<>();
+
+        @Override
+        public void undo() {
+            for (int i = edits.size() - 1; i >= 0; i--) {
+                edits.get(i).undo();
+            }
+        }
+
+        @Override
+        public void redo() {
+            for (Edit edit: edits) {
+                edit.redo();
+            }
+        }
+
+    }
+
+    public interface Edit {
+
+        void undo();
+
+        void redo();
+
+    }
+
+}